@@ -0,0 +1,51 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The rate at which an {@link ActorBuilder} creates actors.
+ * 
+ * @author alexanderkahle
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActorCreationBenchmark {
+	@Param({ "CHUNKED", "LOCK_FREE" })
+	public MailboxType mailboxType;
+	
+	@Setup
+	public void setUp() {
+		builder = new ActorBuilder();
+		behaviour = new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				return this;
+			}
+		};
+	}
+	
+	@Benchmark
+	public Actor build() {
+		return builder.initialBehaviour(behaviour).mailboxType(mailboxType).build();
+	}
+	
+	private ActorBuilder builder;
+	private Behaviour behaviour;
+}
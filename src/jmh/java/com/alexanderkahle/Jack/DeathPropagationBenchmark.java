@@ -0,0 +1,80 @@
+package com.alexanderkahle.Jack;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Killing one actor of a graph of linked actors, which kills the whole graph.
+ * The graph is a chain, a star killed at its hub, or a mesh where every actor
+ * is linked to a few random earlier ones.
+ * 
+ * @author alexanderkahle
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class DeathPropagationBenchmark {
+	@Param({ "chain", "star", "mesh" })
+	public String topology;
+	
+	@Param({ "10", "1000", "1000000" })
+	public int actorCount;
+	
+	@Setup(Level.Invocation)
+	public void buildGraph() {
+		ActorBuilder builder = new ActorBuilder();
+		Behaviour idle = new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				return this;
+			}
+		};
+		Random random = new Random(42);
+		
+		actors = new Actor[actorCount];
+		for (int i = 0; i < actorCount; i++) {
+			actors[i] = builder.initialBehaviour(idle).build();
+			if (i == 0) continue;
+			
+			switch (topology) {
+			case "chain":
+				actors[i - 1].link(actors[i]);
+				break;
+			case "star":
+				actors[0].link(actors[i]);
+				break;
+			case "mesh":
+				for (int j = 0; j < MESH_DEGREE; j++) actors[random.nextInt(i)].link(actors[i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown topology " + topology);
+			}
+		}
+	}
+	
+	@Benchmark
+	public void killGraph() {
+		actors[0].die(null);
+	}
+	
+	private Actor[] actors;
+	
+	private static final int MESH_DEGREE = 4;
+}
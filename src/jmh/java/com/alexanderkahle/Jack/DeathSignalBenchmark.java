@@ -0,0 +1,86 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of the exceptions actors die with. Killing the hub of a star of
+ * linked actors makes one LinkedActorDied per actor, and overflowing the
+ * mailboxes of many actors kills each with a BlockedException. The stackTrace
+ * benchmark makes an exception with a stack trace for each actor of the star,
+ * for comparison.
+ * 
+ * @author alexanderkahle
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+@Fork(1)
+public class DeathSignalBenchmark {
+	@Param({ "1000", "10000" })
+	public int actorCount;
+	
+	@Setup(Level.Invocation)
+	public void buildActors() {
+		ActorBuilder builder = new ActorBuilder();
+		Behaviour idle = new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				return this;
+			}
+		};
+		
+		hub = builder.initialBehaviour(idle).build();
+		full = new Actor[actorCount];
+		for (int i = 0; i < actorCount; i++) {
+			builder.initialBehaviour(idle).build().link(hub);
+			
+			// Never runs, so its one-message mailbox stays full
+			full[i] = builder.initialBehaviour(idle).mailboxSize(1).executor(NEVER).build();
+			full[i].send(OVERFLOW);
+		}
+	}
+	
+	@Benchmark
+	public void killStar() {
+		hub.die(null);
+	}
+	
+	@Benchmark
+	public void overflowMailboxes() {
+		for (Actor a: full) a.send(OVERFLOW);
+	}
+	
+	@Benchmark
+	public Throwable stackTrace() {
+		Throwable last = null;
+		for (int i = 0; i < actorCount; i++) last = new Exception();
+		return last;
+	}
+	
+	private Actor hub;
+	private Actor[] full;
+	
+	private static final Object OVERFLOW = new Object();
+	
+	private static final Executor NEVER = new Executor() {
+		@Override
+		public void execute(Runnable command) {}
+	};
+}
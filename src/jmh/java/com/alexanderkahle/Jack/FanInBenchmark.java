@@ -0,0 +1,92 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Many actors sending to a single aggregating actor at once. Reports the time
+ * for the aggregator to receive every message.
+ * 
+ * @author alexanderkahle
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanInBenchmark {
+	@Param({ "CHUNKED", "LOCK_FREE" })
+	public MailboxType mailboxType;
+	
+	@Param({ "16", "256" })
+	public int producerCount;
+	
+	@Param({ "1000" })
+	public int messagesPerProducer;
+	
+	@Setup
+	public void setUp() {
+		dispatcher = new ForkJoinDispatcher();
+		ActorBuilder builder = new ActorBuilder();
+		
+		aggregator = builder
+				.initialBehaviour(new Behaviour() {
+					@Override
+					public Behaviour run(Actor self, Object message) {
+						((CountDownLatch) message).countDown();
+						return this;
+					}
+				})
+				.executor(dispatcher)
+				.mailboxType(mailboxType)
+				.throughput(64)
+				.build();
+		
+		producers = new Actor[producerCount];
+		for (int i = 0; i < producerCount; i++) {
+			producers[i] = builder
+					.initialBehaviour(new Behaviour() {
+						@Override
+						public Behaviour run(Actor self, Object message) {
+							for (int j = 0; j < messagesPerProducer; j++) aggregator.send(message);
+							return this;
+						}
+					})
+					.executor(dispatcher)
+					.build();
+		}
+	}
+	
+	@TearDown
+	public void tearDown() {
+		aggregator.die(null);
+		for (Actor p: producers) p.die(null);
+		dispatcher.shutdown();
+	}
+	
+	@Benchmark
+	public void fanIn() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(producerCount * messagesPerProducer);
+		for (Actor p: producers) p.send(done);
+		done.await();
+	}
+	
+	private ForkJoinDispatcher dispatcher;
+	private Actor aggregator;
+	private Actor[] producers;
+}
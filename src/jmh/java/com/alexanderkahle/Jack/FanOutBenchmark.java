@@ -0,0 +1,88 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One actor sending to many worker actors. Reports the time for every worker
+ * to receive every message.
+ * 
+ * @author alexanderkahle
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+	@Param({ "16", "256" })
+	public int workerCount;
+	
+	@Param({ "1000" })
+	public int messagesPerWorker;
+	
+	@Setup
+	public void setUp() {
+		dispatcher = new ForkJoinDispatcher();
+		ActorBuilder builder = new ActorBuilder();
+		
+		Behaviour countDown = new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				((CountDownLatch) message).countDown();
+				return this;
+			}
+		};
+		
+		workers = new Actor[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			workers[i] = builder.initialBehaviour(countDown).executor(dispatcher).build();
+		}
+		
+		source = builder
+				.initialBehaviour(new Behaviour() {
+					@Override
+					public Behaviour run(Actor self, Object message) {
+						for (int j = 0; j < messagesPerWorker; j++) {
+							for (Actor w: workers) w.send(message);
+						}
+						return this;
+					}
+				})
+				.executor(dispatcher)
+				.build();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		source.die(null);
+		for (Actor w: workers) w.die(null);
+		dispatcher.shutdown();
+	}
+	
+	@Benchmark
+	public void fanOut() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(workerCount * messagesPerWorker);
+		source.send(done);
+		done.await();
+	}
+	
+	private ForkJoinDispatcher dispatcher;
+	private Actor source;
+	private Actor[] workers;
+}
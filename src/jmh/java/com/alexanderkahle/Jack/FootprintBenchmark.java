@@ -0,0 +1,88 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The heap retained by idle actors. Builds a million actors sharing one
+ * behaviour, and reports the growth of the live heap per actor as the
+ * bytesPerActor counter. The target is under 200 bytes.
+ * 
+ * @author alexanderkahle
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FootprintBenchmark {
+	@Param({ "CHUNKED", "LOCK_FREE" })
+	public MailboxType mailboxType;
+	
+	@Param({ "1000000" })
+	public int actorCount;
+	
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Footprint {
+		public long bytesPerActor;
+	}
+	
+	@Setup
+	public void setUp() {
+		builder = new ActorBuilder();
+		behaviour = new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				return this;
+			}
+		};
+	}
+	
+	@Setup(Level.Iteration)
+	public void measureBefore() {
+		actors = null;
+		before = usedHeap();
+	}
+	
+	@Benchmark
+	public void buildIdleActors(Footprint footprint) {
+		actors = new Actor[actorCount];
+		for (int i = 0; i < actorCount; i++) {
+			actors[i] = builder.initialBehaviour(behaviour).mailboxType(mailboxType).build();
+		}
+		footprint.bytesPerActor = (usedHeap() - before) / actorCount;
+	}
+	
+	@TearDown(Level.Iteration)
+	public void release() {
+		actors = null;
+	}
+	
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	private ActorBuilder builder;
+	private Behaviour behaviour;
+	private Actor[] actors;
+	private long before;
+}
@@ -0,0 +1,89 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of a message sent back and forth between two actors.
+ * 
+ * @author alexanderkahle
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PingPongBenchmark {
+	@Param({ "CHUNKED", "LOCK_FREE" })
+	public MailboxType mailboxType;
+	
+	@Setup
+	public void setUp() {
+		dispatcher = new ForkJoinDispatcher();
+		ActorBuilder builder = new ActorBuilder();
+		ping = builder.initialBehaviour(new Returner()).executor(dispatcher).mailboxType(mailboxType).build();
+		pong = builder.initialBehaviour(new Returner()).executor(dispatcher).mailboxType(mailboxType).build();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		ping.die(null);
+		pong.die(null);
+		dispatcher.shutdown();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(EXCHANGES)
+	public void pingPong() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		ping.send(new Ball(pong, EXCHANGES, done));
+		done.await();
+	}
+	
+	static final class Ball {
+		Ball(Actor sender, int remaining, CountDownLatch done) {
+			this.sender = sender;
+			this.remaining = remaining;
+			this.done = done;
+		}
+		
+		final Actor sender;
+		final int remaining;
+		final CountDownLatch done;
+	}
+	
+	static final class Returner implements Behaviour {
+		@Override
+		public Behaviour run(Actor self, Object message) {
+			Ball ball = (Ball) message;
+			if (ball.remaining == 0) {
+				ball.done.countDown();
+			} else {
+				ball.sender.send(new Ball(self, ball.remaining - 1, ball.done));
+			}
+			return this;
+		}
+	}
+	
+	private ForkJoinDispatcher dispatcher;
+	private Actor ping;
+	private Actor pong;
+	
+	static final int EXCHANGES = 10000;
+}
@@ -0,0 +1,95 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A token passed around a ring of actors. Reports the time per hop.
+ * 
+ * @author alexanderkahle
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RingBenchmark {
+	@Param({ "100", "10000" })
+	public int ringSize;
+	
+	@Setup
+	public void setUp() {
+		dispatcher = new ForkJoinDispatcher();
+		ActorBuilder builder = new ActorBuilder();
+		
+		Forwarder[] forwarders = new Forwarder[ringSize];
+		ring = new Actor[ringSize];
+		for (int i = 0; i < ringSize; i++) {
+			forwarders[i] = new Forwarder();
+			ring[i] = builder.initialBehaviour(forwarders[i]).executor(dispatcher).build();
+		}
+		for (int i = 0; i < ringSize; i++) {
+			forwarders[i].next = ring[(i + 1) % ringSize];
+		}
+	}
+	
+	@TearDown
+	public void tearDown() {
+		for (Actor a: ring) a.die(null);
+		dispatcher.shutdown();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(HOPS)
+	public void passToken() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		ring[0].send(new Token(HOPS, done));
+		done.await();
+	}
+	
+	static final class Token {
+		Token(int remaining, CountDownLatch done) {
+			this.remaining = remaining;
+			this.done = done;
+		}
+		
+		final int remaining;
+		final CountDownLatch done;
+	}
+	
+	static final class Forwarder implements Behaviour {
+		@Override
+		public Behaviour run(Actor self, Object message) {
+			Token token = (Token) message;
+			if (token.remaining == 0) {
+				token.done.countDown();
+			} else {
+				next.send(new Token(token.remaining - 1, token.done));
+			}
+			return this;
+		}
+		
+		Actor next;
+	}
+	
+	private ForkJoinDispatcher dispatcher;
+	private Actor[] ring;
+	
+	static final int HOPS = 100000;
+}
@@ -1,9 +1,19 @@
 package com.alexanderkahle.Jack;
 
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Actors are individual units of concurrently. They have an inbox, with messages
@@ -15,7 +25,8 @@ import java.util.concurrent.Executor;
 public class Actor implements Runnable {
 	/**
 	 * Sends a message to the actor. If the actor is dead, the message will not
-	 * arrive. If the actor's mailbox is full, will kill the actor with a 
+	 * arrive. If the actor's mailbox is full, what happens depends on the 
+	 * actor's {@link OverflowStrategy}: by default, the actor is killed with a
 	 * {@link BlockedException}.
 	 * 
 	 * @param message
@@ -24,14 +35,135 @@ public class Actor implements Runnable {
 		if (message == null) throw new NullPointerException("Cannot send a null message.");
 		
 		BlockingQueue<Object> messages = this.messages;
-		if (messages == null) return;
+		MetricsRecorder metrics = this.metrics;
+		if (messages == null) {
+			if (metrics != null) metrics.dropped();
+			return;
+		}
+		
+		Object toSend = metrics == null ? message : metrics.stamp(message);
+		if (!messages.offer(toSend) && !overflow(messages, toSend)) { // I don't care if I'm already dead
+			if (metrics != null) metrics.dropped();
+			return;
+		}
+		
+		if (metrics != null) metrics.received();
+		schedule();
+	}
+	
+	/**
+	 * Sends a message to the actor if there is room in its mailbox. Unlike
+	 * {@link #send(Object)}, this ignores the overflow strategy: a full
+	 * mailbox just refuses the message.
+	 * 
+	 * A message refused because the actor is dead counts as dropped, as with
+	 * send. One refused by a full mailbox does not: the caller still has it.
+	 * 
+	 * @param message
+	 * @return true if the message was sent, false if the mailbox was full or 
+	 *   the actor is dead.
+	 */
+	public boolean trySend(Object message) {
+		if (message == null) throw new NullPointerException("Cannot send a null message.");
+		
+		BlockingQueue<Object> messages = this.messages;
+		MetricsRecorder metrics = this.metrics;
+		if (messages == null) {
+			if (metrics != null) metrics.dropped();
+			return false;
+		}
+		
+		if (!messages.offer(metrics == null ? message : metrics.stamp(message))) return false;
+		
+		if (metrics != null) metrics.received();
+		schedule();
+		return true;
+	}
+	
+	/**
+	 * Sends a batch of messages to the actor, which receives them in order.
+	 * This enqueues the batch at once and schedules the actor at most once,
+	 * so it is much cheaper than sending the messages one by one.
+	 * 
+	 * The mailbox takes the whole batch or none of it. If the batch does not
+	 * fit, the actor's {@link OverflowStrategy} applies to the batch as a
+	 * whole: FAIL kills the actor, DROP_NEWEST drops the batch, BLOCK waits
+	 * for room for all of it, and DROP_OLDEST drops as many of the oldest
+	 * messages as it takes, including the first of the batch if the batch is
+	 * larger than the mailbox. BLOCK drops a batch larger than the mailbox at
+	 * once, as there will never be room for it.
+	 * 
+	 * @param batch The messages, none of which may be null.
+	 */
+	public void sendAll(Collection<?> batch) {
+		sendAll(batch.toArray());
+	}
+	
+	/**
+	 * Sends a batch of messages to the actor. See {@link #sendAll(Collection)}.
+	 * 
+	 * @param batch The messages, none of which may be null.
+	 */
+	public void sendAll(Object[] batch) {
+		for (Object message: batch) {
+			if (message == null) throw new NullPointerException("Cannot send a null message.");
+		}
+		if (batch.length == 0) return;
+		
+		BlockingQueue<Object> messages = this.messages;
+		MetricsRecorder metrics = this.metrics;
+		if (messages == null) {
+			if (metrics != null) metrics.dropped(batch.length);
+			return;
+		}
+		
+		Object[] toSend = batch;
+		if (metrics != null) {
+			toSend = new Object[batch.length];
+			for (int i = 0; i < batch.length; i++) toSend[i] = metrics.stamp(batch[i]);
+		}
 		
-		if (!messages.offer(message)) { // I don't care if I'm already dead
-			die(new BlockedException());
+		if (!offerAll(messages, toSend) && !overflow(messages, toSend)) {
+			if (metrics != null) metrics.dropped(batch.length);
 			return;
 		}
 		
-		theExecutor.execute(this); // No need for locks: isRunning makes sure only one execution happens at a time
+		if (metrics != null) metrics.received(batch.length);
+		schedule();
+	}
+	
+	/**
+	 * Asks the actor something. The actor receives a {@link Request} holding
+	 * the message, and answers by replying to it. No actor is built to receive
+	 * the reply.
+	 * 
+	 * The future fails with an ExecutionException if the actor dies before
+	 * replying, the cause being the reason it died. Use 
+	 * {@link Future#get(long, java.util.concurrent.TimeUnit)} to stop waiting after a timeout:
+	 * if it times out, the ask is cancelled, and a late reply is ignored.
+	 * 
+	 * @param message The question.
+	 * @return The reply to come.
+	 */
+	public Future<Object> ask(Object message) {
+		if (message == null) throw new NullPointerException("Cannot send a null message.");
+		
+		ReplyFuture reply = new ReplyFuture(this);
+		if (!reply.isDone()) send(new Request(message, reply));
+		return reply;
+	}
+	
+	/**
+	 * Takes a snapshot of the actor's metrics. This does not disturb the actor.
+	 * 
+	 * @return The metrics, or null if the actor was built without metrics.
+	 */
+	public ActorMetrics metrics() {
+		MetricsRecorder metrics = this.metrics;
+		if (metrics == null) return null;
+		
+		BlockingQueue<Object> messages = this.messages;
+		return metrics.snapshot(messages == null ? 0 : messages.size());
 	}
 	
 	/**
@@ -43,22 +175,24 @@ public class Actor implements Runnable {
 	public Integer addObserver(Actor a) {
 		if (a == null) throw new NullPointerException("Cannot observe null.");
 		
-		Map<Integer, Actor> observers;
-		Integer observationID;
-		
-		synchronized (this) { 
+		ObserverMap observers = this.observers;
+		if (observers == null) { // Nobody has observed us yet
+			if (state >= DYING) return null;
+			OBSERVERS.compareAndSet(this, null, new ObserverMap());
 			observers = this.observers;
+			if (observers == null) return null; // die took it
+		}
+		
+		synchronized (observers) {
+			if (state >= DYING) return null; // die has taken the observers
 			
-			if (observers != null) {
-				// Make sure the observationID is unique
-				while (observers.get(
-						observationID = generator.generateID()
-						) != null) {} 
-				observers.put(observationID, a);
-				return observationID;
-			}
+			// Make sure the observationID is unique
+			int observationID;
+			while (!observers.putIfAbsent(
+					observationID = nextObservationID(), a
+					)) {} 
+			return observationID;
 		}
-		return null;
 	}
 	
 	/**
@@ -67,10 +201,11 @@ public class Actor implements Runnable {
 	 * @param watchId The id of the observation.
 	 */
 	public void removeObserver(int watchId) {
-		Map<Integer, Actor> observers;
-		synchronized (this) {
-			observers = this.observers;
-			if (observers == null) return;
+		ObserverMap observers = this.observers;
+		if (observers == null) return;
+		
+		synchronized (observers) {
+			if (state >= DYING) return;
 			observers.remove(watchId);
 		}
 	}
@@ -116,30 +251,35 @@ public class Actor implements Runnable {
 		if (trapExit && 
 				(reason instanceof LinkedActorDied)) {
 			removeLinkInternal(((LinkedActorDied) reason).actor);
-			send(reason);
+			sendSystem(reason);
 			return;
 		}
 		
-		Thread currentThread;
-		Map<Integer, Actor> observers;
-		Set<Actor> links;
+		int s;
+		do {
+			s = state;
+			if (s >= DYING) return; // Somebody else is killing us
+		} while (!STATE.compareAndSet(this, s, DYING));
 		
-		synchronized (this) {
-			currentThread = this.currentThread;
-			observers = this.observers;
-			links = this.links;
-						
-			this.theBehaviour = null;
-			this.currentThread = null;
-			this.observers = null;
-			this.messages = null;
-			this.links = null;
-			this.isRunning = false;
+		ObserverMap observers = this.observers;
+		Set<Actor> links = this.links;
+		if (s < RUNNING) { // Nobody is taking messages out, or handling one
+			spareMailbox = this.messages;
+			currentMessage = null;
 		}
 		
+		// Wait for any addObserver or link in progress: the next ones see that we are dying
+		if (observers != null) synchronized (observers) { this.observers = null; }
+		if (links != null) synchronized (links) { this.links = null; }
+		
+		this.theBehaviour = null;
+		this.messages = null;
+		this.systemMessages = null;
+		state = DEAD;
+		
 		notifyLinks(links, reason);
 		notifyObservers(observers, reason);
-		interruptCurrentThread(currentThread);
+		interruptCurrentThread();
 	}
 	
 	/**
@@ -148,6 +288,9 @@ public class Actor implements Runnable {
 	 * Warning: this removes the message from the queue completely!
 	 * Warning: this blocks if the queue is empty!
 	 * 
+	 * System messages, such as the LinkedActorDied of a trapExit actor, come
+	 * first, and wake the behaviour if it is waiting.
+	 * 
 	 * @return the next message in the queue, or null if the actor is dead.
 	 * @throws InterruptedException if interrupted while waiting for a message
 	 * @throws RuntimeException if called outside the actor’s behaviour’s thread.
@@ -158,113 +301,732 @@ public class Actor implements Runnable {
 					"takeNextMessage can only be called inside a behaviour run by the actor.");
 		BlockingQueue<Object> messages = this.messages;
 		if (messages == null) return null;
-		return messages.take();
+		
+		Object message = nextMessage(messages);
+		if (message != null) return currentMessage = message;
+		
+		waitingForMessage = true;
+		try {
+			// A system message sent from now on comes with a WAKE in the mailbox
+			while ((message = pollSystemMessage()) == null 
+					&& (message = messages.take()) == WAKE) {}
+			return currentMessage = open(message);
+		} finally {
+			waitingForMessage = false;
+		}
+	}
+	
+	/**
+	 * Puts the message the behaviour is handling aside, in the actor's stash,
+	 * until {@link #unstashAll()}. Use it to put off messages the behaviour
+	 * cannot handle yet, rather than sending them to the actor again, which
+	 * puts them behind every other message, and may overflow the mailbox.
+	 * 
+	 * The stash is not bounded by the mailbox size. If the actor dies, the
+	 * messages in it are lost.
+	 * 
+	 * @throws IllegalStateException if the message has already been stashed.
+	 * @throws RuntimeException if called outside the actor’s behaviour’s thread.
+	 */
+	public void stash() {
+		if (Thread.currentThread() != this.currentThread) 
+			throw new RuntimeException(
+					"stash can only be called inside a behaviour run by the actor.");
+		if (currentMessage == null) throw new IllegalStateException("The message has already been stashed.");
+		
+		if (stash == null) stash = new ArrayDeque<>();
+		stash.add(currentMessage);
+		currentMessage = null;
+	}
+	
+	/**
+	 * Hands the stashed messages back, in the order they were stashed, ahead
+	 * of the messages waiting in the mailbox. Typically called when the
+	 * behaviour changes to one that can handle them.
+	 * 
+	 * @throws RuntimeException if called outside the actor’s behaviour’s thread.
+	 */
+	public void unstashAll() {
+		if (Thread.currentThread() != this.currentThread) 
+			throw new RuntimeException(
+					"unstashAll can only be called inside a behaviour run by the actor.");
+		
+		if (stash == null || stash.isEmpty()) return;
+		saved().addAllFirst(stash); // Stashed before any still waiting, so they go first
+	}
+	
+	/**
+	 * Takes the first message the filter matches, waiting for one to arrive
+	 * if need be. Messages passed over are kept, in order, and taken before
+	 * the mailbox afterwards, like stashed ones. 
+	 * 
+	 * Use it to wait for a reply in the middle of a behaviour. Beware: it 
+	 * holds the thread while it waits, as takeNextMessage does.
+	 * 
+	 * @param filter Picks the message.
+	 * @param timeout How long to wait. Zero or less looks only at the messages
+	 *   already there.
+	 * @param unit The unit of the timeout.
+	 * @return The message, or null if none matched in time, or the actor is dead.
+	 * @throws InterruptedException if interrupted while waiting for a message
+	 * @throws RuntimeException if called outside the actor’s behaviour’s thread.
+	 */
+	public Object receive(MessageFilter filter, long timeout, TimeUnit unit) throws InterruptedException {
+		if (filter == null) throw new NullPointerException("Expected a filter.");
+		if (Thread.currentThread() != this.currentThread) 
+			throw new RuntimeException(
+					"receive can only be called inside a behaviour run by the actor.");
+		
+		Object message = saved().removeFirst(filter);
+		if (message != null) return currentMessage = message;
+		return awaitMatch(filter, unit.toNanos(timeout));
+	}
+	
+	/**
+	 * Takes the first message of the type, as 
+	 * {@link #receive(MessageFilter, long, TimeUnit)}. An actor built to 
+	 * {@link ActorBuilder#indexMessages(boolean) index its messages} finds one
+	 * among those passed over without looking through them all.
+	 * 
+	 * @param type The class of the message, or one of its superclasses.
+	 */
+	public <T> T receive(Class<T> type, long timeout, TimeUnit unit) throws InterruptedException {
+		if (type == null) throw new NullPointerException("Expected a type.");
+		if (Thread.currentThread() != this.currentThread) 
+			throw new RuntimeException(
+					"receive can only be called inside a behaviour run by the actor.");
+		
+		T message = saved().removeFirst(type);
+		if (message != null) {
+			currentMessage = message;
+			return message;
+		}
+		return type.cast(awaitMatch(new InstanceOf(type), unit.toNanos(timeout)));
 	}
 		
 	@Override
 	public void run() {
-		Object message;
-		Behaviour behaviour; // So that it can't change under our feet
+		if (!startRunning()) return; // already running, or dead
+		
+		Behaviour behaviour = theBehaviour; // So that it can't change under our feet
+		BlockingQueue<Object> messages = this.messages;
+		if (behaviour == null || messages == null) return; // we've been killed
+
+		Object message = nextMessage(messages);
+		if (message == null) { // mailbox empty
+			endRunning(messages);
+			return;
+		}
+		
+		currentThread = Thread.currentThread();
 
-		synchronized (this) {
-			if (isRunning) return;
+		// Process up to throughput messages before giving the thread back
+		int remaining = throughput;
+		long deadline = throughputDeadline > 0 ? System.nanoTime() + throughputDeadline : 0L;
+		
+		MetricsRecorder metrics = this.metrics;
+		do {
+			currentMessage = message;
+			long start = metrics != null ? System.nanoTime() : 0L;
 			
-			behaviour = theBehaviour; 
-			if (behaviour == null) { // we've been killed
+			try {
+				behaviour = behaviour.run(this, message);
+			} catch (Throwable t) {
+				releaseCurrentThread();
+				spareMailbox = messages;
+				// An exception was thrown by the behaviour
+				die(t);
 				return;
 			}
-
-			message = messages.poll();
-			if (message == null) return; // mailbox empty
 			
-			isRunning = true;
-			currentThread = Thread.currentThread();
-		}
-
-		try {
-			theBehaviour = behaviour.run(this, message);
-		} catch (Throwable t) {
-			currentThread = null;
-			// An exception was thrown by the behaviour
-			if (theBehaviour != null) { 
-				die(t);
-			}		
-			return;
-		}
+			if (metrics != null) metrics.processingTime(System.nanoTime() - start);
+			
+			if (behaviour == null) { // the actor terminated
+				releaseCurrentThread();
+				spareMailbox = messages;
+				die(null);
+				return;
+			}
+		} while (state == RUNNING
+				&& --remaining > 0
+				&& (deadline == 0L || System.nanoTime() - deadline < 0)
+				&& (message = nextMessage(messages)) != null);
 		
-		currentThread = null;
-		if (theBehaviour == null) { // the actor terminated
-			die(null);
-			return;
-		}
-
-		isRunning = false;		
-		theExecutor.execute(this);
+		releaseCurrentThread();
+		theBehaviour = behaviour;
+		endRunning(messages);
 	}
 
+	/*
+	 * One constructor, taking every setting, so that no way of making an
+	 * actor can leave one out.
+	 */
 	Actor(Behaviour initialBehaviour, Executor executor,
 			Map<Integer, Actor> observers,
 			Set<Actor> links,
-			BlockingQueue<Object> messages, IDGenerator generator, boolean trapExit) {
+			BlockingQueue<Object> messages, IDGenerator generator, boolean trapExit,
+			int throughput, long throughputDeadline, MetricsRecorder metrics,
+			OverflowStrategy overflowStrategy, long blockTimeout, boolean indexMessages) {
 		theBehaviour = initialBehaviour;
 		theExecutor = executor;
-		this.observers = observers;
+		this.observers = copyObservers(observers);
 		this.messages = messages;
 		this.generator = generator;
 		this.links = links;
-		isRunning = false;
 		this.trapExit = trapExit;
+		this.throughput = throughput;
+		this.throughputDeadline = throughputDeadline;
+		this.metrics = metrics;
+		this.overflowStrategy = overflowStrategy;
+		this.blockTimeout = blockTimeout;
+		this.indexMessages = indexMessages;
 	}
 	
-	private synchronized boolean linkInternal(Actor a) {
-		if (links == null) return false;
-		links.add(a);
-		return true;
+	/**
+	 * Most actors are never observed, so the map is only made when needed.
+	 */
+	private static ObserverMap copyObservers(Map<Integer, Actor> observers) {
+		if (observers == null || observers.isEmpty()) return null;
+		
+		ObserverMap copy = new ObserverMap();
+		for (Map.Entry<Integer, Actor> e: observers.entrySet()) {
+			copy.putIfAbsent(e.getKey(), e.getValue());
+		}
+		return copy;
+	}
+	
+	/**
+	 * Without a generator, ids count up from zero: they are unique until they
+	 * wrap around, and need no shared state. Called holding the observers lock.
+	 */
+	private int nextObservationID() {
+		IDGenerator generator = this.generator;
+		return generator == null ? lastObservationID++ : generator.generateID();
+	}
+	
+	/**
+	 * Takes the mailbox of a dead actor, once nothing will take messages out
+	 * of it any more, so that a successor can reuse it. It may still hold
+	 * messages, and a sender that raced the death may yet add one.
+	 * 
+	 * @return The mailbox, or null if the actor is alive, still running, or
+	 *   the mailbox has already been taken.
+	 */
+	BlockingQueue<Object> takeSpareMailbox() {
+		BlockingQueue<Object> spare = spareMailbox;
+		if (spare == null || state != DEAD) return null;
+		spareMailbox = null;
+		return spare;
+	}
+	
+	/**
+	 * The number of actors observing this one.
+	 */
+	int observerCount() {
+		ObserverMap observers = this.observers;
+		if (observers == null) return 0;
+		synchronized (observers) {
+			return observers.size();
+		}
+	}
+	
+	/**
+	 * Whether the actor is dead or dying. Cheaper than a death notification
+	 * for those who only need to check now and then.
+	 */
+	boolean isDead() {
+		return state >= DYING;
+	}
+	
+	/**
+	 * The number of messages waiting in the mailbox, or -1 if the actor is dead.
+	 */
+	int mailboxDepth() {
+		BlockingQueue<Object> messages = this.messages;
+		return messages == null ? -1 : messages.size();
+	}
+	
+	/**
+	 * The number of messages that can still be sent before the mailbox is 
+	 * full, or 0 if the actor is dead.
+	 */
+	int remainingCapacity() {
+		BlockingQueue<Object> messages = this.messages;
+		return messages == null ? 0 : messages.remainingCapacity();
+	}
+	
+	/**
+	 * Sends a message ahead of those in the mailbox, such as a notification
+	 * of the death of an observed or linked actor. System messages are not
+	 * bounded by the mailbox size.
+	 */
+	void sendSystem(Object message) {
+		if (messages == null) return; // Dead
+		
+		MetricsRecorder metrics = this.metrics;
+		SystemMessage node = new SystemMessage(metrics == null ? message : metrics.stamp(message));
+		SystemMessage head;
+		do {
+			head = systemMessages;
+			node.next = head;
+		} while (!SYSTEM_MESSAGES.compareAndSet(this, head, node));
+		if (metrics != null) metrics.received();
+		
+		if (waitingForMessage) { // takeNextMessage is blocked on an empty mailbox
+			BlockingQueue<Object> messages = this.messages;
+			if (messages != null) messages.offer(WAKE);
+		}
+		schedule();
+	}
+	
+	/*
+	 * Only called by the thread running the actor. System messages come 
+	 * first, then saved ones, which have already been opened.
+	 */
+	private Object nextMessage(BlockingQueue<Object> messages) {
+		Object message = pollSystemMessage();
+		if (message != null) return open(message);
+		
+		if (saved != null && (message = saved.poll()) != null) return message;
+		
+		while ((message = messages.poll()) == WAKE) {}
+		return message == null ? null : open(message);
+	}
+	
+	private SavedMessages saved() {
+		if (saved == null) saved = new SavedMessages(indexMessages);
+		return saved;
+	}
+	
+	/*
+	 * Takes messages until the filter matches one, saving the others. System
+	 * messages are candidates too, and a WAKE stops the wait for them.
+	 */
+	private Object awaitMatch(MessageFilter filter, long timeout) throws InterruptedException {
+		BlockingQueue<Object> messages = this.messages;
+		if (messages == null) return null;
+		
+		long deadline = System.nanoTime() + timeout;
+		waitingForMessage = true;
+		try {
+			while (true) {
+				Object message = pollSystemMessage();
+				if (message == null) {
+					message = messages.poll();
+					if (message == null) {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0 
+								|| (message = messages.poll(remaining, TimeUnit.NANOSECONDS)) == null) return null;
+					}
+					if (message == WAKE) continue;
+				}
+				
+				message = open(message);
+				if (filter.matches(message)) return currentMessage = message;
+				saved.addLast(message);
+			}
+		} finally {
+			waitingForMessage = false;
+		}
 	}
+	
+	/*
+	 * System messages are pushed onto a stack, so the runner takes the whole
+	 * stack and reverses it into the order they were sent in.
+	 */
+	private Object pollSystemMessage() {
+		SystemMessage next = pendingSystemMessages;
+		if (next == null) {
+			if (systemMessages == null) return null;
+			
+			SystemMessage stack = SYSTEM_MESSAGES.getAndSet(this, null);
+			while (stack != null) {
+				SystemMessage below = stack.next;
+				stack.next = next;
+				next = stack;
+				stack = below;
+			}
+		}
+		pendingSystemMessages = next.next;
+		return next.message;
+	}
+	
+	/**
+	 * Applies the overflow strategy to a message the full mailbox refused.
+	 * 
+	 * @return true if the message was enqueued after all.
+	 */
+	private boolean overflow(BlockingQueue<Object> messages, Object message) {
+		switch (overflowStrategy) {
+		case DROP_NEWEST:
+			return false;
+		case DROP_OLDEST:
+			if (offerEvictingOldest(messages, message) != null && metrics != null) metrics.dropped();
+			return true;
+		case BLOCK:
+			return awaitRoom(messages, new Object[] { message });
+		default:
+			die(BlockedException.INSTANCE);
+			return false;
+		}
+	}
+	
+	/**
+	 * Applies the overflow strategy to a batch the full mailbox refused.
+	 * 
+	 * @return true if the batch was enqueued after all.
+	 */
+	private boolean overflow(BlockingQueue<Object> messages, Object[] batch) {
+		switch (overflowStrategy) {
+		case DROP_NEWEST:
+			return false;
+		case DROP_OLDEST:
+			for (Object message: batch) {
+				if (offerEvictingOldest(messages, message) != null && metrics != null) metrics.dropped();
+			}
+			return true;
+		case BLOCK:
+			return batch.length <= capacity(messages) && awaitRoom(messages, batch);
+		default:
+			die(BlockedException.INSTANCE);
+			return false;
+		}
+	}
+	
+	/**
+	 * @return The message evicted, or null if there was room after all.
+	 */
+	private static Object offerEvictingOldest(BlockingQueue<Object> messages, Object message) {
+		if (messages instanceof Mailbox) return ((Mailbox) messages).offerEvictingOldest(message);
+		
+		Object evicted = null;
+		while (!messages.offer(message)) {
+			Object oldest = messages.poll();
+			if (oldest != null) evicted = oldest;
+		}
+		return evicted;
+	}
+	
+	/*
+	 * Gives up when the block timeout passes, the actor dies, or the sender is
+	 * interrupted, in which case the interrupt is kept for the sender to see.
+	 * On a fork join pool the pool is told that the sender is blocked, as in
+	 * Mailbox.take: the receiver may be waiting for this very thread.
+	 */
+	private boolean awaitRoom(BlockingQueue<Object> messages, Object[] batch) {
+		RoomWaiter waiter = new RoomWaiter(messages, batch);
+		if (!(Thread.currentThread() instanceof ForkJoinWorkerThread)) {
+			while (!waiter.isReleasable()) waiter.block();
+			return waiter.sent;
+		}
+		
+		try {
+			ForkJoinPool.managedBlock(waiter);
+		} catch (InterruptedException e) { // Never thrown: the waiter keeps the interrupt
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return waiter.sent;
+	}
+	
+	/*
+	 * Each block parks once, so that the pool reconsiders between parks
+	 * whether another thread should run the receiver: a receiver scheduled
+	 * on this thread's queue as the wait began may otherwise be left there.
+	 */
+	private final class RoomWaiter implements ForkJoinPool.ManagedBlocker {
+		RoomWaiter(BlockingQueue<Object> messages, Object[] batch) {
+			this.messages = messages;
+			this.batch = batch;
+			this.deadline = System.nanoTime() + blockTimeout;
+		}
+		
+		@Override
+		public boolean block() {
+			if (Actor.this.messages != messages || Thread.currentThread().isInterrupted()) {
+				gaveUp = true;
+				return true;
+			}
+			
+			long park = backoff;
+			if (blockTimeout > 0) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					gaveUp = true;
+					return true;
+				}
+				park = Math.min(park, remaining);
+			}
+			LockSupport.parkNanos(Actor.this, park);
+			backoff = Math.min(2 * backoff, MAX_BACKOFF_NANOS);
+			return isReleasable();
+		}
 
-	private synchronized boolean removeLinkInternal(Actor a) {
-		if (links == null) return false;
-		links.remove(a);
+		@Override
+		public boolean isReleasable() {
+			return sent || gaveUp || (sent = offerAll(messages, batch));
+		}
+		
+		private final BlockingQueue<Object> messages;
+		private final Object[] batch;
+		private final long deadline;
+		private long backoff = MIN_BACKOFF_NANOS;
+		private boolean sent;
+		private boolean gaveUp;
+	}
+	
+	private static int capacity(BlockingQueue<Object> messages) {
+		if (messages instanceof Mailbox) return ((Mailbox) messages).capacity;
+		return messages.size() + messages.remainingCapacity();
+	}
+	
+	/*
+	 * Mailboxes built by ActorBuilder take the batch at once. Other queues get
+	 * the messages one by one, up to the first one they refuse.
+	 */
+	private static boolean offerAll(BlockingQueue<Object> messages, Object[] batch) {
+		if (messages instanceof Mailbox) return ((Mailbox) messages).offerAll(batch);
+		
+		for (Object message: batch) {
+			if (!messages.offer(message)) return false;
+		}
 		return true;
 	}
+	
+	/**
+	 * Submits the actor to its executor, unless it is already scheduled or running.
+	 */
+	private void schedule() {
+		if (state == IDLE && STATE.compareAndSet(this, IDLE, SCHEDULED)) {
+			try {
+				theExecutor.execute(this);
+			} catch (RuntimeException e) {
+				STATE.compareAndSet(this, SCHEDULED, IDLE); // Let the next send try again
+				throw e;
+			}
+		}
+	}
+	
+	/*
+	 * Unwraps a message taken out of the mailbox for the behaviour.
+	 */
+	private Object open(Object message) {
+		MetricsRecorder metrics = this.metrics;
+		if (metrics != null) message = metrics.unstamp(message);
+		if (message instanceof Delivery) message = ((Delivery) message).taken();
+		return message;
+	}
+	
+	private boolean startRunning() {
+		int s;
+		do {
+			s = state;
+			if (s >= RUNNING) return false;
+		} while (!STATE.compareAndSet(this, s, RUNNING));
+		return true;
+	}
+	
+	private void endRunning(BlockingQueue<Object> messages) {
+		if (!STATE.compareAndSet(this, RUNNING, IDLE)) { // killed while running
+			theBehaviour = null;
+			spareMailbox = messages;
+			return;
+		}
+		// Messages sent while we were running did not schedule us
+		if (!messages.isEmpty() || pendingSystemMessages != null || systemMessages != null
+				|| (saved != null && !saved.isEmpty())) schedule();
+	}
+	
+	/**
+	 * Links one way: the other actor dies with this one, but not the reverse.
+	 */
+	boolean linkInternal(Actor a) {
+		Set<Actor> links = this.links;
+		if (links == null) { // Nobody has linked to us yet
+			if (state >= DYING) return false;
+			LINKS.compareAndSet(this, null, new HashSet<Actor>());
+			links = this.links;
+			if (links == null) return false; // die took it
+		}
+		
+		synchronized (links) {
+			if (state >= DYING) return false;
+			links.add(a);
+			return true;
+		}
+	}
+
+	boolean removeLinkInternal(Actor a) {
+		Set<Actor> links = this.links;
+		if (links == null) return state < DYING;
+		
+		synchronized (links) {
+			if (state >= DYING) return false;
+			links.remove(a);
+			return true;
+		}
+	}
 
-	private void notifyObservers(Map<Integer, Actor> observers, Throwable reason) {
+	private void notifyObservers(ObserverMap observers, Throwable reason) {
 		if (observers == null) return;
 		
-		for (Integer id: observers.keySet()) {
-			Actor observer = observers.get(id);
+		for (int i = 0; i < observers.slots(); i++) {
+			Actor observer = observers.valueAt(i);
 			if (observer != null) {
-				observer.send(new ObservedDied(id, reason));
+				observer.sendSystem(new ObservedDied(observers.keyAt(i), reason));
 			}
 		}		
 	}
 
+	/*
+	 * Killing the links kills their links in turn, so rather than recursing
+	 * (which overflows the stack on long chains) the outermost die on a thread
+	 * drains a worklist of the links still to kill, and the deaths it causes
+	 * just add to it.
+	 */
 	private void notifyLinks(Set<Actor> links, Throwable reason) {
-		if (links == null) return;
+		if (links == null || links.isEmpty()) return;
 		
-		LinkedActorDied notification = new LinkedActorDied(this, reason);
+		Deaths deaths = DEATHS.get();
+		deaths.pending.add(links);
+		deaths.pending.add(new LinkedActorDied(this, reason));
+		if (deaths.draining) return; // An outer die is propagating
 		
-		for (Actor a: links) {
-			a.die(notification);
-		}		
+		deaths.draining = true;
+		try {
+			while (!deaths.pending.isEmpty()) {
+				@SuppressWarnings("unchecked")
+				Set<Actor> toKill = (Set<Actor>) deaths.pending.poll();
+				LinkedActorDied notification = (LinkedActorDied) deaths.pending.poll();
+				for (Actor a: toKill) {
+					a.die(notification);
+				}
+			}
+		} finally {
+			deaths.pending.clear();
+			deaths.draining = false;
+		}
 	}
 
-	private void interruptCurrentThread(Thread currentThread) {
-		if (currentThread == null) return;
+	/*
+	 * The thread running the behaviour may finish and be handed another task
+	 * by the executor at any moment, so the interrupt must not land after
+	 * that. Whoever wins the CAS on currentThread decides: the killer marks it
+	 * INTERRUPTING while it interrupts, and the runner waits for that before
+	 * clearing the interrupt and giving the thread back.
+	 */
+	private void interruptCurrentThread() {
+		Thread currentThread = this.currentThread;
+		if (currentThread == null || currentThread == INTERRUPTING) return;
 		
-		// Synchronization needed to make sure the system doesn’t reassign the Thread.
-		// See: https://developer.android.com/training/multiple-threads/run-code.html
-		synchronized (this) { currentThread.interrupt(); } 
+		if (CURRENT_THREAD.compareAndSet(this, currentThread, INTERRUPTING)) {
+			currentThread.interrupt();
+			this.currentThread = null;
+		}
+	}
+	
+	/*
+	 * Ends a turn. The last message is let go of too, so that an idle or dead
+	 * actor does not keep it alive.
+	 */
+	private void releaseCurrentThread() {
+		currentMessage = null;
+		if (CURRENT_THREAD.compareAndSet(this, Thread.currentThread(), null)) return;
+		
+		while (currentThread == INTERRUPTING) Thread.yield();
+		Thread.interrupted(); // The interrupt was meant for the behaviour, not the executor
+	}
+	
+	private static final class InstanceOf implements MessageFilter {
+		InstanceOf(Class<?> type) {
+			this.type = type;
+		}
+		
+		@Override
+		public boolean matches(Object message) {
+			return type.isInstance(message);
+		}
+		
+		private final Class<?> type;
+	}
+	
+	private static final class SystemMessage {
+		SystemMessage(Object message) {
+			this.message = message;
+		}
+		
+		final Object message;
+		SystemMessage next;
+	}
+	
+	/**
+	 * The link deaths still to propagate on a thread: pairs of a dead actor's
+	 * links and the notification to kill them with.
+	 */
+	private static final class Deaths {
+		final ArrayDeque<Object> pending = new ArrayDeque<>();
+		boolean draining;
 	}
 	
 	private final Executor theExecutor;
-	private final IDGenerator generator;
+	private final IDGenerator generator; // null to number observations in order
+	private final int throughput;
+	private final long throughputDeadline; // nanoseconds, 0 for none
+	private final boolean trapExit;
+	private final MetricsRecorder metrics; // null unless built with metrics
+	private final OverflowStrategy overflowStrategy;
+	private final long blockTimeout; // nanoseconds, 0 to wait as long as it takes
+	private final boolean indexMessages; // Index saved messages by class
 
-	private volatile Behaviour theBehaviour;
-	private volatile Map<Integer, Actor> observers;
-	private volatile Set<Actor> links;
+	/*
+	 * Lifecycle: IDLE -> SCHEDULED -> RUNNING -> IDLE ..., and any of these
+	 * -> DYING -> DEAD. Only the thread that moved the actor to RUNNING
+	 * touches the behaviour and polls the mailbox.
+	 */
+	private volatile int state = IDLE;
+	private Behaviour theBehaviour; // Published through state
+	private volatile ObserverMap observers; // null until first observed
+	private int lastObservationID; // Guarded by observers
+	private volatile Set<Actor> links; // null until first linked
 	private volatile BlockingQueue<Object> messages;
-	private volatile boolean isRunning = false;
 	private volatile Thread currentThread = null;
-	private volatile boolean trapExit;
+	private volatile SystemMessage systemMessages; // A stack, newest first
+	private SystemMessage pendingSystemMessages; // Taken off the stack, oldest first
+	private volatile boolean waitingForMessage; // In takeNextMessage
+	private Object currentMessage; // The message being handled, until stashed
+	private ArrayDeque<Object> stash; // null until first stashed
+	private SavedMessages saved; // Taken before the mailbox; null until needed
+	private volatile BlockingQueue<Object> spareMailbox; // Set once a dead actor's mailbox is unused
+	
+	private static final int IDLE = 0;
+	private static final int SCHEDULED = 1;
+	private static final int RUNNING = 2;
+	private static final int DYING = 3;
+	private static final int DEAD = 4;
+	
+	private static final ThreadLocal<Deaths> DEATHS = new ThreadLocal<Deaths>() {
+		@Override
+		protected Deaths initialValue() {
+			return new Deaths();
+		}
+	};
+	
+	private static final long MIN_BACKOFF_NANOS = 1000L;
+	private static final long MAX_BACKOFF_NANOS = 1000000L;
+	
+	private static final Object WAKE = new Object(); // Wakes takeNextMessage for a system message
+	
+	private static final Thread INTERRUPTING = new Thread("Jack interrupt marker");
+	
+	private static final AtomicIntegerFieldUpdater<Actor> STATE =
+			AtomicIntegerFieldUpdater.newUpdater(Actor.class, "state");
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<Actor, Set> LINKS =
+			AtomicReferenceFieldUpdater.newUpdater(Actor.class, Set.class, "links");
+	private static final AtomicReferenceFieldUpdater<Actor, ObserverMap> OBSERVERS =
+			AtomicReferenceFieldUpdater.newUpdater(Actor.class, ObserverMap.class, "observers");
+	private static final AtomicReferenceFieldUpdater<Actor, SystemMessage> SYSTEM_MESSAGES =
+			AtomicReferenceFieldUpdater.newUpdater(Actor.class, SystemMessage.class, "systemMessages");
+	private static final AtomicReferenceFieldUpdater<Actor, Thread> CURRENT_THREAD =
+			AtomicReferenceFieldUpdater.newUpdater(Actor.class, Thread.class, "currentThread");
 }
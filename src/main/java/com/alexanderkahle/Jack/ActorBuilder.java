@@ -3,12 +3,10 @@ package com.alexanderkahle.Jack;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An actor-building factory; one can use an instance repeatedly to build actors.
@@ -24,32 +22,197 @@ public class ActorBuilder {
 		reset();
 	}
 	
+	// A snapshot of the settings, for building the same actor again later
+	private ActorBuilder(ActorBuilder settings) {
+		defaultExecutor = settings.defaultExecutor;
+		theBehaviour = settings.theBehaviour;
+		theExecutor = settings.theExecutor;
+		observers = settings.observers == null ? null : new HashMap<>(settings.observers);
+		links = settings.copyLinks();
+		idGenerator = settings.idGenerator;
+		mailboxSize = settings.mailboxSize;
+		mailboxType = settings.mailboxType;
+		throughput = settings.throughput;
+		throughputDeadline = settings.throughputDeadline;
+		keepMetrics = settings.keepMetrics;
+		overflowStrategy = settings.overflowStrategy;
+		blockTimeout = settings.blockTimeout;
+		trapExit = settings.trapExit;
+		indexMessages = settings.indexMessages;
+	}
+	
 	/**
 	 * Builds the actor with the current settings. Resets the settings to their initial
 	 * values. Note, <code>setInitialBehaviour</code> must be called before building.
 	 * 
-	 * By default, an actor has a really dumb executor: it creates a new thread to 
-	 * execute on each run. One can change the default executor with setDefaultExecutor.
-	 * Unless you're just testing, I _highly_ recommend doing so.
+	 * By default, actors share a {@link ForkJoinDispatcher} with one thread per 
+	 * processor. One can change the default executor with setDefaultExecutor, for
+	 * example to keep IO bound actors apart from compute bound ones.
+	 * 
+	 * By default, each actor numbers its observations 0, 1, 2, ... Set an id
+	 * generator to use some other scheme.
 	 * 
-	 * The default id generator generates a new random ID each time it's called.
+	 * The mailbox size is an upper bound: storage for messages is only allocated
+	 * as they arrive, so a large mailbox costs nothing until it fills up. Actors
+	 * that many actors send to at once should use a {@link MailboxType#LOCK_FREE}
+	 * mailbox.
+	 * 
+	 * By default, an actor processes one message each time it is given a thread.
+	 * Chatty actors should raise their throughput, so that they process several
+	 * messages per turn before handing the thread back to the executor. The
+	 * throughput deadline bounds how long such a turn may last.
+	 * 
+	 * By default, a message sent to a full mailbox kills the actor. Choose another
+	 * {@link OverflowStrategy} to shed messages or slow senders down instead.
 	 * 
 	 * Note, this is not threadsafe. Make a new instance per thread (or per usage).
 	 * 
 	 * @return A new actor.
-	 * @throws IllegalArgumentException If the mailbox size is not positive.
-	 * @throws NullPointerException If any of the fields have been set null.
+	 * @throws IllegalArgumentException If the mailbox size or throughput is not positive,
+	 *   the throughput deadline or block timeout is negative, or the overflow strategy
+	 *   is DROP_OLDEST for a lock free mailbox.
+	 * @throws NullPointerException If the behaviour, executor, mailbox type or
+	 *   overflow strategy has been set null. The observers, links and id
+	 *   generator may be null: without a generator, ids are numbered in order.
 	 */
 	public Actor build() {
-		if (mailboxSize <= 0) throw new IllegalArgumentException("The mailbox must have a positive size");
-		if (theExecutor == null) throw new NullPointerException("Expected an executor.");
 		if (theBehaviour == null) throw new NullPointerException("Expected a behaviour.");
-		if (observers == null) throw new NullPointerException("Expected observers");
-		if (links == null) throw new NullPointerException("Expected links.");
+		validate();
+		
+		Actor actor = make(theBehaviour, links, null);
+		reset();
+		return actor;
+	}
+	
+	/**
+	 * Builds a pool of actors with the current settings, and a router sending
+	 * messages to them. Each actor gets its behaviour from the factory, and a
+	 * set of links of its own. Resets the settings to their initial values; the
+	 * initial behaviour need not be set.
+	 * 
+	 * @param strategy How the router picks an actor for each message.
+	 * @param size The number of actors in the pool.
+	 * @param factory Makes the initial behaviour of each actor.
+	 * @return The router.
+	 * @throws IllegalArgumentException If the size is not positive, or as for build.
+	 * @throws NullPointerException If the strategy or factory is null, or as for build.
+	 */
+	public Router buildRouter(RoutingStrategy strategy, int size, BehaviourFactory factory) {
+		if (strategy == null) throw new NullPointerException("Expected a routing strategy.");
+		if (factory == null) throw new NullPointerException("Expected a behaviour factory.");
+		if (size <= 0) throw new IllegalArgumentException("The pool must have a positive size");
+		validate();
+		
+		Actor[] routees = new Actor[size];
+		for (int i = 0; i < size; i++) {
+			Behaviour behaviour = factory.create(i);
+			if (behaviour == null) throw new NullPointerException("Expected a behaviour.");
+			routees[i] = make(behaviour, copyLinks(), null);
+		}
+		reset();
+		return new Router(strategy, routees);
+	}
+	
+	/**
+	 * Makes the spec of a child of a {@link Supervisor}: the current settings,
+	 * and a factory for the child's initial behaviour, called with the child's
+	 * position each time it is started. Resets the settings to their initial
+	 * values; the initial behaviour need not be set.
+	 * 
+	 * Each time the child is started, it gets a set of links of its own,
+	 * holding any set here.
+	 * 
+	 * @throws IllegalArgumentException As for build.
+	 * @throws NullPointerException If the factory is null, or as for build.
+	 */
+	public ChildSpec childSpec(BehaviourFactory factory) {
+		if (factory == null) throw new NullPointerException("Expected a behaviour factory.");
+		validate();
 		
-		BlockingQueue<Object> messages = new ArrayBlockingQueue<>(mailboxSize);
+		ChildSpec spec = new ChildSpec(new ActorBuilder(this), factory);
 		reset();
-		return new Actor(theBehaviour, theExecutor, observers, links, messages, idGenerator, trapExit);
+		return spec;
+	}
+	
+	/**
+	 * Makes the spec of a supervisor that is itself the child of a supervisor,
+	 * to build trees of them. The settings apply to the supervisor; see
+	 * {@link #buildSupervisor(SupervisionStrategy, int, long, TimeUnit, ChildSpec...)}.
+	 */
+	public ChildSpec supervisorSpec(SupervisionStrategy strategy, int maxRestarts, long window, TimeUnit unit,
+			ChildSpec... children) {
+		if (strategy == null) throw new NullPointerException("Expected a supervision strategy.");
+		if (maxRestarts < 0) throw new IllegalArgumentException("The maximum restarts cannot be negative");
+		if (window <= 0) throw new IllegalArgumentException("The restart window must be positive");
+		for (ChildSpec child: children) {
+			if (child == null) throw new NullPointerException("Expected a child spec.");
+		}
+		validate();
+		
+		ChildSpec spec = new ChildSpec(new ActorBuilder(this), strategy, maxRestarts, unit.toNanos(window),
+				children.clone());
+		reset();
+		return spec;
+	}
+	
+	/**
+	 * Builds a supervisor with the current settings, and starts its children.
+	 * When a child fails, the supervisor restarts it, and, depending on the
+	 * strategy, its siblings. If it has to restart children more than 
+	 * maxRestarts times within the window, it gives up and dies, with the
+	 * reason the last child failed, killing its children. Resets the settings
+	 * to their initial values; the initial behaviour need not be set.
+	 * 
+	 * @param strategy Which children to restart when one fails.
+	 * @param maxRestarts The most restarts allowed within the window.
+	 * @param window The time over which restarts are counted.
+	 * @param unit The unit of the window.
+	 * @param children The specs of the children, in the order they start.
+	 * @return The supervisor.
+	 * @throws IllegalArgumentException If maxRestarts is negative, the window
+	 *   not positive, or as for build.
+	 * @throws NullPointerException If the strategy or a child spec is null, or as for build.
+	 */
+	public Supervisor buildSupervisor(SupervisionStrategy strategy, int maxRestarts, long window, TimeUnit unit,
+			ChildSpec... children) {
+		return (Supervisor) supervisorSpec(strategy, maxRestarts, window, unit, children).start(0, null);
+	}
+	
+	private void validate() {
+		if (mailboxSize <= 0) throw new IllegalArgumentException("The mailbox must have a positive size");
+		if (throughput <= 0) throw new IllegalArgumentException("The throughput must be positive");
+		if (throughputDeadline < 0) throw new IllegalArgumentException("The throughput deadline cannot be negative");
+		if (blockTimeout < 0) throw new IllegalArgumentException("The block timeout cannot be negative");
+		if (theExecutor == null) throw new NullPointerException("Expected an executor.");
+		if (mailboxType == null) throw new NullPointerException("Expected a mailbox type.");
+		if (overflowStrategy == null) throw new NullPointerException("Expected an overflow strategy.");
+		if (overflowStrategy == OverflowStrategy.DROP_OLDEST && mailboxType == MailboxType.LOCK_FREE)
+			throw new IllegalArgumentException("Lock free mailboxes cannot drop their oldest messages");
+	}
+	
+	/**
+	 * Makes an actor with these settings, in the given mailbox, or a new one
+	 * if it is null.
+	 */
+	Actor make(Behaviour behaviour, Set<Actor> links, BlockingQueue<Object> messages) {
+		if (messages == null) messages = makeMailbox(mailboxType, mailboxSize);
+		return new Actor(behaviour, theExecutor, observers, links, messages, idGenerator, trapExit,
+				throughput, throughputDeadline, keepMetrics ? new MetricsRecorder() : null,
+				overflowStrategy, blockTimeout, indexMessages);
+	}
+	
+	Supervisor makeSupervisor(BlockingQueue<Object> messages, SupervisionStrategy strategy, 
+			int maxRestarts, long window, ChildSpec[] children) {
+		if (messages == null) messages = makeMailbox(mailboxType, mailboxSize);
+		return new Supervisor(theExecutor, observers, copyLinks(), messages, idGenerator,
+				throughput, throughputDeadline, keepMetrics ? new MetricsRecorder() : null,
+				overflowStrategy, blockTimeout, indexMessages,
+				strategy, maxRestarts, window, children);
+	}
+	
+	// Each of several actors built from the same settings gets its own links
+	Set<Actor> copyLinks() {
+		return links == null ? null : new HashSet<>(links);
 	}
 	
 	public ActorBuilder initialBehaviour(Behaviour b) {
@@ -67,21 +230,94 @@ public class ActorBuilder {
 		return this;
 	}
 	
+	public ActorBuilder mailboxType(MailboxType type) {
+		mailboxType = type;
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum number of messages the actor processes each time it runs.
+	 */
+	public ActorBuilder throughput(int messagesPerTurn) {
+		throughput = messagesPerTurn;
+		return this;
+	}
+	
+	/**
+	 * Sets the time after which the actor stops processing messages for the
+	 * current turn, even if it has not reached its throughput. Zero means no
+	 * deadline.
+	 */
+	public ActorBuilder throughputDeadline(long time, TimeUnit unit) {
+		throughputDeadline = unit.toNanos(time);
+		return this;
+	}
+	
+	/**
+	 * Sets what sending to the actor does when its mailbox is full.
+	 */
+	public ActorBuilder overflowStrategy(OverflowStrategy strategy) {
+		overflowStrategy = strategy;
+		return this;
+	}
+	
+	/**
+	 * Sets how long senders wait for room in a full mailbox, under the BLOCK
+	 * overflow strategy, before dropping the message. Zero means as long as
+	 * it takes.
+	 */
+	public ActorBuilder blockTimeout(long time, TimeUnit unit) {
+		blockTimeout = unit.toNanos(time);
+		return this;
+	}
+	
+	/**
+	 * Sets whether the actor keeps metrics, readable with {@link Actor#metrics()}.
+	 * Keeping metrics costs a few reads of the clock per message.
+	 */
+	public ActorBuilder metrics(boolean flag) {
+		keepMetrics = flag;
+		return this;
+	}
+	
+	/**
+	 * Sets the observers the actor starts with, by observation id. The actor
+	 * copies them; null means none.
+	 */
 	public ActorBuilder observers(Map<Integer, Actor> o) {
 		observers = o;
 		return this;
 	}
 	
+	/**
+	 * Sets the set the actor keeps its links in, which may already hold some.
+	 * Null means the actor makes its own when first linked.
+	 */
 	public ActorBuilder links(Set<Actor> links) {
 		this.links = links;
 		return this;
 	}
 
+	/**
+	 * Sets the generator of the actor's observation ids. Null, the default,
+	 * numbers them in order.
+	 */
 	public ActorBuilder idGenerator(IDGenerator idGenerator) {
 		this.idGenerator = idGenerator;
 		return this;
 	}
 	
+	/**
+	 * Sets whether the actor indexes the messages a selective receive passes
+	 * over by class, so that {@link Actor#receive(Class, long, TimeUnit)} 
+	 * finds one without looking through them all. Worth it for actors that
+	 * wait for replies with deep backlogs; off by default.
+	 */
+	public ActorBuilder indexMessages(boolean flag) {
+		indexMessages = flag;
+		return this;
+	}
+	
 	public ActorBuilder trapExit(boolean flag) {
 		trapExit = flag;
 		return this;
@@ -94,26 +330,36 @@ public class ActorBuilder {
 	private void reset() {
 		theBehaviour = null;
 		theExecutor = defaultExecutor;
-		observers = new HashMap<>();
-		links = new HashSet<>();
+		observers = null;
+		links = null;
 		mailboxSize = DEFAULT_MAILBOX_SIZE;
-		idGenerator = defaultIDGenerator;
+		mailboxType = MailboxType.CHUNKED;
+		throughput = DEFAULT_THROUGHPUT;
+		throughputDeadline = 0L;
+		keepMetrics = false;
+		overflowStrategy = OverflowStrategy.FAIL;
+		blockTimeout = 0L;
+		idGenerator = null;
 		trapExit = false;
+		indexMessages = false;
+	}
+	
+	private static BlockingQueue<Object> makeMailbox(MailboxType type, int size) {
+		switch (type) {
+		case LOCK_FREE:
+			return new MpscMailbox(size);
+		default:
+			return new ChunkedMailbox(size);
+		}
 	}
 	
 	private static Executor makeDefaultExecutor() {
-		return Executors.newCachedThreadPool();
+		return SharedDispatcher.INSTANCE;
 	}
 	
-	private static final IDGenerator defaultIDGenerator = new IDGenerator() {
-		private Random randomizer = new Random();
-		
-		@Override
-		public int generateID() {
-			return randomizer.nextInt();
-		}
-
-	};
+	private static final class SharedDispatcher { // Created on first use
+		static final Executor INSTANCE = new ForkJoinDispatcher();
+	}
 	
 	private Executor defaultExecutor;
 	
@@ -123,7 +369,15 @@ public class ActorBuilder {
 	private Set<Actor> links;
 	private IDGenerator idGenerator;
 	private int mailboxSize;
+	private MailboxType mailboxType;
+	private int throughput;
+	private long throughputDeadline;
+	private boolean keepMetrics;
+	private OverflowStrategy overflowStrategy;
+	private long blockTimeout;
 	private boolean trapExit;
+	private boolean indexMessages;
 	
 	public static int DEFAULT_MAILBOX_SIZE = 10000000;
+	public static int DEFAULT_THROUGHPUT = 1;
 }
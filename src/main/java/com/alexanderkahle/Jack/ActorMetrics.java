@@ -0,0 +1,58 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * A snapshot of an actor's metrics, taken with {@link Actor#metrics()}. Actors
+ * only keep metrics if built with {@link ActorBuilder#metrics(boolean)}.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public final class ActorMetrics {
+	/**
+	 * Messages accepted into the mailbox.
+	 */
+	public final long messagesReceived;
+	
+	/**
+	 * Messages taken out of the mailbox by the actor.
+	 */
+	public final long messagesProcessed;
+	
+	/**
+	 * Messages sent that never made it into the mailbox: because the actor
+	 * was dead, or its mailbox full.
+	 */
+	public final long messagesDropped;
+	
+	/**
+	 * Messages waiting in the mailbox.
+	 */
+	public final int mailboxDepth;
+	
+	/**
+	 * How long each run of the behaviour took.
+	 */
+	public final LatencyHistogram processingTime;
+	
+	/**
+	 * How long each message waited in the mailbox.
+	 */
+	public final LatencyHistogram queueingDelay;
+	
+	ActorMetrics(long messagesReceived, long messagesProcessed, long messagesDropped, 
+			int mailboxDepth, LatencyHistogram processingTime, LatencyHistogram queueingDelay) {
+		this.messagesReceived = messagesReceived;
+		this.messagesProcessed = messagesProcessed;
+		this.messagesDropped = messagesDropped;
+		this.mailboxDepth = mailboxDepth;
+		this.processingTime = processingTime;
+		this.queueingDelay = queueingDelay;
+	}
+	
+	@Override
+	public String toString() {
+		return "ActorMetrics[received=" + messagesReceived + ", processed=" + messagesProcessed
+				+ ", dropped=" + messagesDropped + ", mailboxDepth=" + mailboxDepth
+				+ ", processingTime=" + processingTime + ", queueingDelay=" + queueingDelay + "]";
+	}
+}
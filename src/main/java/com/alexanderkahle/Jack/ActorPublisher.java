@@ -0,0 +1,189 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Publishes a stream from an actor. The actor's behaviour hands items to
+ * {@link #publish(Object)}, which only sends them while the subscriber has
+ * asked for more. Each time the subscriber asks, the actor receives a
+ * {@link Demand}, so it can produce on demand rather than flood the stream.
+ *
+ * A publisher has a single subscriber. If the actor dies, the stream fails
+ * with the reason it died.
+ *
+ * @author alexanderkahle
+ *
+ * @param <T> The type of the items.
+ */
+public final class ActorPublisher<T> implements Streams.Publisher<T> {
+	/**
+	 * @param actor The actor publishing the items.
+	 */
+	public ActorPublisher(Actor actor) {
+		if (actor == null) throw new NullPointerException("Expected the publishing actor.");
+		this.actor = actor;
+	}
+
+	@Override
+	public void subscribe(Streams.Subscriber<? super T> subscriber) {
+		if (subscriber == null) throw new NullPointerException("Expected a subscriber.");
+
+		if (!SUBSCRIBER.compareAndSet(this, null, subscriber)) {
+			subscriber.onSubscribe(NO_SUBSCRIPTION);
+			subscriber.onError(new IllegalStateException("The publisher already has a subscriber."));
+			return;
+		}
+
+		synchronized (this) { // No items until onSubscribe has returned
+			subscriber.onSubscribe(new Subscription());
+		}
+		watchID = actor.addObserver(new DeathWatch() {
+			@Override
+			void died(Throwable reason) {
+				fail(reason == null ? new IllegalStateException("The publishing actor died.") : reason);
+			}
+		});
+		if (watchID == null) {
+			fail(new IllegalStateException("The publishing actor is dead."));
+		} else {
+			synchronized (this) {
+				if (!done) return;
+			}
+			stopWatching(); // Cancelled in onSubscribe
+		}
+	}
+
+	/**
+	 * Sends the item to the subscriber, if it has asked for more.
+	 *
+	 * @return true if the item was sent, false if there is no demand for it,
+	 *   or the stream is over.
+	 */
+	public boolean publish(T item) {
+		if (item == null) throw new NullPointerException("Cannot publish a null item.");
+
+		synchronized (this) {
+			if (done) return false;
+
+			long d;
+			do {
+				d = demand;
+				if (d == 0) return false;
+			} while (!DEMAND.compareAndSet(this, d, d - 1));
+
+			subscriber.onNext(item);
+			return true;
+		}
+	}
+
+	/**
+	 * @return The number of items the subscriber has asked for and not yet got.
+	 */
+	public long demand() {
+		return demand;
+	}
+
+	/**
+	 * Ends the stream. Does nothing if it has already ended.
+	 */
+	public void complete() {
+		synchronized (this) {
+			if (done || subscriber == null) return;
+			done = true;
+			subscriber.onComplete();
+		}
+		stopWatching();
+	}
+
+	/**
+	 * Ends the stream with an error. Does nothing if it has already ended.
+	 */
+	public void fail(Throwable reason) {
+		if (reason == null) throw new NullPointerException("Expected the error.");
+
+		synchronized (this) {
+			if (done || subscriber == null) return;
+			done = true;
+			subscriber.onError(reason);
+		}
+		stopWatching();
+	}
+
+	/**
+	 * Sent to the actor each time the subscriber asks for more items.
+	 */
+	public static final class Demand {
+		Demand(ActorPublisher<?> publisher, long n) {
+			this.publisher = publisher;
+			this.n = n;
+		}
+
+		public final ActorPublisher<?> publisher;
+		public final long n;
+	}
+
+	/**
+	 * Sent to the actor when the subscriber cancels.
+	 */
+	public static final class Cancelled {
+		Cancelled(ActorPublisher<?> publisher) {
+			this.publisher = publisher;
+		}
+
+		public final ActorPublisher<?> publisher;
+	}
+
+	private final class Subscription implements Streams.Subscription {
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				fail(new IllegalArgumentException("Must request a positive number of items."));
+				return;
+			}
+
+			long d;
+			do {
+				d = demand;
+			} while (!DEMAND.compareAndSet(ActorPublisher.this, d, d + n < 0 ? Long.MAX_VALUE : d + n));
+
+			actor.send(new Demand(ActorPublisher.this, n));
+		}
+
+		@Override
+		public void cancel() {
+			synchronized (ActorPublisher.this) {
+				if (done) return;
+				done = true;
+			}
+			stopWatching();
+			actor.send(new Cancelled(ActorPublisher.this));
+		}
+	}
+
+	private void stopWatching() {
+		Integer watchID = this.watchID;
+		if (watchID != null) actor.removeObserver(watchID);
+	}
+
+	private final Actor actor;
+	private volatile Streams.Subscriber<? super T> subscriber;
+	private volatile long demand;
+	private volatile Integer watchID;
+	private boolean done; // Guarded by this
+
+	private static final Streams.Subscription NO_SUBSCRIPTION = new Streams.Subscription() {
+		@Override
+		public void request(long n) {}
+
+		@Override
+		public void cancel() {}
+	};
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<ActorPublisher, Streams.Subscriber> SUBSCRIBER =
+			AtomicReferenceFieldUpdater.newUpdater(ActorPublisher.class, Streams.Subscriber.class, "subscriber");
+	@SuppressWarnings("rawtypes")
+	private static final AtomicLongFieldUpdater<ActorPublisher> DEMAND =
+			AtomicLongFieldUpdater.newUpdater(ActorPublisher.class, "demand");
+}
@@ -0,0 +1,167 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * Subscribes an actor to a stream. The actor receives the items as ordinary
+ * messages, then a {@link Completed} or a {@link Failed} when the stream ends.
+ *
+ * The subscriber never asks for more items than there is room for in the
+ * actor's mailbox, up to its window, keeping a slot free for the end of the
+ * stream. As the actor takes items out of its
+ * mailbox, the subscriber asks for more, so the stream goes as fast as the
+ * actor, however fast the publisher could go.
+ *
+ * If the actor dies, the subscription is cancelled. If its mailbox fills up
+ * with other messages, the subscription is cancelled too, and the actor
+ * receives a {@link Failed} with a {@link BlockedException}, ahead of its
+ * other messages. Items the publisher sends after that are dropped, so the
+ * end of the stream is always its last message.
+ *
+ * @author alexanderkahle
+ *
+ * @param <T> The type of the items.
+ */
+public final class ActorSubscriber<T> implements Streams.Subscriber<T> {
+	/**
+	 * Creates a subscriber asking for at most {@link #DEFAULT_WINDOW} items
+	 * at once.
+	 */
+	public ActorSubscriber(Actor target) {
+		this(target, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param target The actor to send the items to.
+	 * @param window The most items waiting in the actor's mailbox at once.
+	 * @throws IllegalArgumentException If the window is not positive.
+	 */
+	public ActorSubscriber(Actor target, int window) {
+		if (target == null) throw new NullPointerException("Expected an actor to send the items to.");
+		if (window <= 0) throw new IllegalArgumentException("The window must be positive");
+		this.target = target;
+		this.window = window;
+	}
+
+	@Override
+	public void onSubscribe(Streams.Subscription subscription) {
+		if (subscription == null) throw new NullPointerException("Expected a subscription.");
+
+		synchronized (this) {
+			if (this.subscription != null) { // Only one subscription at a time
+				subscription.cancel();
+				return;
+			}
+			this.subscription = subscription;
+		}
+
+		watchID = target.addObserver(new DeathWatch() {
+			@Override
+			void died(Throwable reason) {
+				end(true);
+			}
+		});
+		if (watchID == null) { // Already dead
+			end(true);
+			return;
+		}
+
+		int credit = Math.min(window, target.remainingCapacity() - 1); // Room for the end of the stream
+		refill = Math.max(1, credit / 2);
+		request(Math.max(1, credit));
+	}
+
+	@Override
+	public void onNext(T item) {
+		if (item == null) throw new NullPointerException("Cannot send a null item.");
+		if (ended) return; // Items still on their way after a cancel
+		if (!target.trySend(new Element(item)) && end(true)) {
+			// The mailbox is full, so tell the actor through the system lane
+			target.sendSystem(new Failed(this, BlockedException.INSTANCE));
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		if (throwable == null) throw new NullPointerException("Expected the error.");
+		if (end(false)) target.send(new Failed(this, throwable));
+	}
+
+	@Override
+	public void onComplete() {
+		if (end(false)) target.send(new Completed(this));
+	}
+
+	/**
+	 * Sent to the actor after the last item.
+	 */
+	public static final class Completed {
+		Completed(ActorSubscriber<?> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public final ActorSubscriber<?> subscriber;
+	}
+
+	/**
+	 * Sent to the actor when the stream fails.
+	 */
+	public static final class Failed {
+		Failed(ActorSubscriber<?> subscriber, Throwable reason) {
+			this.subscriber = subscriber;
+			this.reason = reason;
+		}
+
+		public final ActorSubscriber<?> subscriber;
+		public final Throwable reason;
+	}
+
+	/*
+	 * Runs on the actor's thread, so taken needs no synchronization. Credit is
+	 * handed back in batches, to keep the calls to request down.
+	 */
+	private final class Element implements Delivery {
+		Element(T item) {
+			this.item = item;
+		}
+
+		@Override
+		public Object taken() {
+			if (++taken >= refill) {
+				request(taken);
+				taken = 0;
+			}
+			return item;
+		}
+
+		private final T item;
+	}
+
+	// Calls on the subscription must not overlap
+	private synchronized void request(long n) {
+		if (!ended) subscription.request(n);
+	}
+
+	/*
+	 * Ends the stream once: returns whether this call ended it, so the actor
+	 * is told at most once.
+	 */
+	private boolean end(boolean cancel) {
+		synchronized (this) {
+			if (ended) return false;
+			ended = true;
+			if (cancel) subscription.cancel();
+		}
+		Integer watchID = this.watchID;
+		if (watchID != null) target.removeObserver(watchID);
+		return true;
+	}
+
+	private final Actor target;
+	private final int window;
+	private Streams.Subscription subscription; // Guarded by this
+	private volatile boolean ended; // Written holding this
+	private volatile Integer watchID;
+	private volatile int refill;
+	private int taken; // Owned by the actor
+
+	public static int DEFAULT_WINDOW = 256;
+}
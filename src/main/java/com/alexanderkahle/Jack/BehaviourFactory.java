@@ -0,0 +1,13 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * Makes the initial behaviours of a pool of actors, such as those built by
+ * {@link ActorBuilder#buildRouter(RoutingStrategy, int, BehaviourFactory)}.
+ */
+public interface BehaviourFactory {
+	/**
+	 * @param index The position of the actor in the pool, from 0.
+	 * @return The actor's initial behaviour.
+	 */
+	Behaviour create(int index);
+}
@@ -1,5 +1,10 @@
 package com.alexanderkahle.Jack;
 
+/**
+ * The reason an actor dies when a message is sent to its full mailbox. It
+ * carries no stack trace, and the actor uses one shared instance, so that
+ * overflowing mailboxes stay cheap to kill.
+ */
 public class BlockedException extends Exception {
 
 	/**
@@ -7,4 +12,12 @@ public class BlockedException extends Exception {
 	 */
 	private static final long serialVersionUID = 1L;
 
+	public BlockedException() {
+		super(null, null, false, false);
+	}
+	
+	/**
+	 * Shared by all actors: it has no state to tell the deaths apart.
+	 */
+	static final BlockedException INSTANCE = new BlockedException();
 }
@@ -0,0 +1,58 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * How a {@link Supervisor} starts, and restarts, one of its children. Make
+ * one with {@link ActorBuilder#childSpec(BehaviourFactory)}, or, for a 
+ * supervisor under a supervisor, with 
+ * {@link ActorBuilder#supervisorSpec(SupervisionStrategy, int, long, java.util.concurrent.TimeUnit, ChildSpec...)}.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public final class ChildSpec {
+	ChildSpec(ActorBuilder settings, BehaviourFactory factory) {
+		this.settings = settings;
+		this.factory = factory;
+		this.strategy = null;
+		this.maxRestarts = 0;
+		this.window = 0L;
+		this.children = null;
+	}
+	
+	ChildSpec(ActorBuilder settings, SupervisionStrategy strategy, int maxRestarts, long window,
+			ChildSpec[] children) {
+		this.settings = settings;
+		this.factory = null;
+		this.strategy = strategy;
+		this.maxRestarts = maxRestarts;
+		this.window = window;
+		this.children = children;
+	}
+	
+	/**
+	 * Starts the child.
+	 * 
+	 * @param index The child's position under its supervisor.
+	 * @param messages The mailbox to reuse, empty, or null for a new one.
+	 */
+	Actor start(int index, BlockingQueue<Object> messages) {
+		if (factory == null) {
+			Supervisor supervisor = settings.makeSupervisor(messages, strategy, maxRestarts, window, children);
+			supervisor.startChildren();
+			return supervisor;
+		}
+		
+		Behaviour behaviour = factory.create(index);
+		if (behaviour == null) throw new NullPointerException("Expected a behaviour.");
+		return settings.make(behaviour, settings.copyLinks(), messages);
+	}
+	
+	private final ActorBuilder settings;
+	private final BehaviourFactory factory; // null for a supervisor
+	private final SupervisionStrategy strategy;
+	private final int maxRestarts;
+	private final long window; // nanoseconds
+	private final ChildSpec[] children;
+}
@@ -0,0 +1,187 @@
+package com.alexanderkahle.Jack;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A bounded mailbox that only allocates storage as messages arrive. Messages
+ * are kept in a linked list of small fixed-size chunks: a chunk is allocated
+ * when the last one fills up, and released as soon as it has been drained.
+ * An actor that never receives a message allocates no chunks at all, whatever
+ * its capacity.
+ *
+ * @author alexanderkahle
+ *
+ */
+final class ChunkedMailbox extends Mailbox {
+	ChunkedMailbox(int capacity) {
+		super(capacity);
+	}
+
+	@Override
+	public boolean offer(Object message) {
+		if (message == null) throw new NullPointerException();
+
+		synchronized (this) {
+			if (count == capacity) return false;
+			enqueue(message);
+		}
+		signalConsumer();
+		return true;
+	}
+
+	@Override
+	boolean offerAll(Object[] messages) {
+		for (Object message: messages) {
+			if (message == null) throw new NullPointerException();
+		}
+
+		synchronized (this) {
+			if (messages.length > capacity - count) return false;
+			for (Object message: messages) enqueue(message);
+		}
+		signalConsumer();
+		return true;
+	}
+
+	@Override
+	Object offerEvictingOldest(Object message) {
+		if (message == null) throw new NullPointerException();
+
+		Object evicted = null;
+		synchronized (this) {
+			if (count == capacity) evicted = dequeue();
+			enqueue(message);
+		}
+		signalConsumer();
+		return evicted;
+	}
+
+	@Override
+	public Object poll() {
+		synchronized (this) {
+			if (count == 0) return null;
+			return dequeue();
+		}
+	}
+
+	@Override
+	public Object peek() {
+		synchronized (this) {
+			if (count == 0) return null;
+			return head.items[headIndex];
+		}
+	}
+
+	// Read without the lock, so routers can compare mailboxes cheaply
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public int drainTo(Collection<? super Object> c, int maxElements) {
+		if (c == this) throw new IllegalArgumentException("Cannot drain a mailbox into itself.");
+
+		int drained = 0;
+		synchronized (this) {
+			while (count > 0 && drained < maxElements) {
+				c.add(dequeue());
+				drained++;
+			}
+		}
+		return drained;
+	}
+
+	/**
+	 * Iterates over a snapshot of the mailbox. The iterator does not support
+	 * removal.
+	 */
+	@Override
+	public Iterator<Object> iterator() {
+		List<Object> snapshot;
+		synchronized (this) {
+			snapshot = new ArrayList<>(count);
+			Chunk chunk = head;
+			int index = headIndex;
+			for (int i = 0; i < count; i++) {
+				if (index == CHUNK_SIZE) {
+					chunk = chunk.next;
+					index = 0;
+				}
+				snapshot.add(chunk.items[index++]);
+			}
+		}
+
+		final Iterator<Object> it = snapshot.iterator();
+		return new Iterator<Object>() {
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public Object next() {
+				return it.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Cannot remove messages from a mailbox iterator.");
+			}
+		};
+	}
+
+	/**
+	 * Number of chunks currently allocated. For testing.
+	 */
+	synchronized int allocatedChunks() {
+		int chunks = 0;
+		for (Chunk c = head; c != null; c = c.next) chunks++;
+		return chunks;
+	}
+
+	private void enqueue(Object message) {
+		if (tail == null) {
+			head = tail = new Chunk();
+		} else if (tailIndex == CHUNK_SIZE) {
+			Chunk chunk = new Chunk();
+			tail.next = chunk;
+			tail = chunk;
+			tailIndex = 0;
+		}
+		tail.items[tailIndex++] = message;
+		count++;
+	}
+
+	private Object dequeue() {
+		Object message = head.items[headIndex];
+		head.items[headIndex++] = null;
+		count--;
+
+		if (count == 0) { // head == tail: reuse the chunk from the start
+			headIndex = tailIndex = 0;
+		} else if (headIndex == CHUNK_SIZE) { // release the drained chunk
+			Chunk drained = head;
+			head = drained.next;
+			drained.next = null;
+			headIndex = 0;
+		}
+		return message;
+	}
+
+	private static final class Chunk {
+		final Object[] items = new Object[CHUNK_SIZE];
+		Chunk next;
+	}
+
+	private Chunk head;
+	private Chunk tail;
+	private int headIndex;
+	private int tailIndex;
+	private volatile int count; // Written holding the lock
+
+	static final int CHUNK_SIZE = 32;
+}
@@ -0,0 +1,30 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * An observer that is told when the actor it observes dies, without being an
+ * actor with a mailbox of its own. Every other message is ignored.
+ *
+ * @author alexanderkahle
+ *
+ */
+abstract class DeathWatch extends Actor {
+	DeathWatch() {
+		super(null, null, null, null, null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+	}
+
+	/**
+	 * Called on the thread killing the observed actor.
+	 */
+	abstract void died(Throwable reason);
+
+	@Override
+	public void send(Object message) {
+		if (message instanceof ObservedDied) died(((ObservedDied) message).reason);
+	}
+
+	@Override
+	void sendSystem(Object message) {
+		send(message);
+	}
+}
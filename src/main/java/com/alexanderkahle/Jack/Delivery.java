@@ -0,0 +1,16 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * A message whose sender wants to know when the actor takes it out of its
+ * mailbox. The actor calls {@link #taken()} on the thread running it, and
+ * its behaviour receives the message returned.
+ *
+ * @author alexanderkahle
+ *
+ */
+interface Delivery {
+	/**
+	 * @return The message to hand the behaviour.
+	 */
+	Object taken();
+}
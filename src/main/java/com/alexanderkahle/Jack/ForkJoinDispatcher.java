@@ -0,0 +1,94 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor for actors backed by a work-stealing {@link ForkJoinPool} in
+ * async (FIFO) mode. This is the default executor of {@link ActorBuilder}.
+ *
+ * When an actor running on the pool sends a message to an idle actor, the
+ * receiver is pushed onto the sender's thread's own work queue rather than
+ * a shared one. The reply to a message thus tends to run on the same core,
+ * with the messages still in its cache, while idle threads steal any work
+ * that piles up.
+ *
+ * The worker threads are not daemons: like those of a cached thread pool, they
+ * keep the JVM alive while they are busy, and go away once they have been idle
+ * for a while.
+ *
+ * @author alexanderkahle
+ *
+ */
+public class ForkJoinDispatcher implements Executor {
+	/**
+	 * Creates a dispatcher with one thread per available processor.
+	 */
+	public ForkJoinDispatcher() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a dispatcher running at most parallelism actors at once.
+	 *
+	 * @param parallelism The target number of threads.
+	 * @throws IllegalArgumentException If parallelism is not positive.
+	 */
+	public ForkJoinDispatcher(int parallelism) {
+		pool = new ForkJoinPool(parallelism, WORKER_FACTORY, null, true);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		Thread current = Thread.currentThread();
+		if (current instanceof ForkJoinWorkerThread
+				&& ((ForkJoinWorkerThread) current).getPool() == pool) {
+			ForkJoinTask.adapt(command).fork(); // onto this thread's own queue
+		} else {
+			pool.execute(command);
+		}
+	}
+
+	/**
+	 * Stops accepting new actor runs. Runs already submitted still happen.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Waits for the dispatcher to finish after a shutdown.
+	 *
+	 * @return true if it finished, false if the timeout elapsed.
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return pool.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * The number of threads actors run on at once.
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	private static final class Worker extends ForkJoinWorkerThread {
+		Worker(ForkJoinPool pool) {
+			super(pool);
+			setDaemon(false);
+		}
+	}
+
+	private final ForkJoinPool pool;
+
+	private static final ForkJoinPool.ForkJoinWorkerThreadFactory WORKER_FACTORY =
+			new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			return new Worker(pool);
+		}
+	};
+}
@@ -0,0 +1,311 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Sends messages to actors later, or over and over. Use it instead of 
+ * sleeping in a behaviour, which holds on to a thread of the executor.
+ * 
+ * Timers are kept in a hashed timing wheel: a ring of buckets, one per tick,
+ * which a single thread walks a tick at a time, sending the messages that are
+ * due. Setting and cancelling a timer take constant time however many are
+ * waiting, at the price of precision: messages arrive up to a tick late. 
+ * Timers for actors that have died are dropped as the wheel passes them.
+ * 
+ * The thread starts with the first timer, and runs until {@link #stop()}.
+ * Messages are sent with {@link Actor#send(Object)}, on the timer's thread,
+ * so an actor whose overflow strategy is BLOCK holds up every timer while its
+ * mailbox is full. A timer whose message cannot be sent, because sending 
+ * throws, is dropped.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public final class HashedWheelTimer {
+	/**
+	 * Creates a timer ticking every {@link #DEFAULT_TICK_MILLIS} milliseconds,
+	 * with {@link #DEFAULT_WHEEL_SIZE} buckets.
+	 */
+	public HashedWheelTimer() {
+		this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+	}
+	
+	/**
+	 * @param tick How often the timer checks for messages to send.
+	 * @param unit The unit of the tick.
+	 * @param wheelSize The number of buckets, rounded up to a power of two. 
+	 *   A wheel spanning the usual delays sends most messages the first time 
+	 *   round.
+	 * @throws IllegalArgumentException If the tick or wheel size is not positive.
+	 */
+	public HashedWheelTimer(long tick, TimeUnit unit, int wheelSize) {
+		if (unit == null) throw new NullPointerException("Expected a time unit.");
+		if (tick <= 0) throw new IllegalArgumentException("The tick must be positive");
+		if (wheelSize <= 0 || wheelSize > 1 << 30) 
+			throw new IllegalArgumentException("The wheel size must be positive, and at most 2^30");
+		
+		this.tickNanos = unit.toNanos(tick);
+		int size = Integer.highestOneBit(wheelSize);
+		if (size < wheelSize) size <<= 1;
+		this.wheel = new Timeout[size];
+		this.mask = size - 1;
+	}
+	
+	/**
+	 * Sends the message to the actor once the delay has passed.
+	 * 
+	 * @return The timer, to cancel it.
+	 * @throws IllegalStateException If the timer has been stopped.
+	 */
+	public Timeout sendAfter(Actor target, Object message, long delay, TimeUnit unit) {
+		return schedule(target, message, unit.toNanos(delay), 0);
+	}
+	
+	/**
+	 * Sends the message to the actor once the initial delay has passed, then
+	 * once every period, until cancelled or the actor dies. Missed periods are
+	 * made up: the messages keep to the schedule on average.
+	 * 
+	 * @return The timer, to cancel it.
+	 * @throws IllegalArgumentException If the period is not positive.
+	 * @throws IllegalStateException If the timer has been stopped.
+	 */
+	public Timeout sendEvery(Actor target, Object message, long initialDelay, long period, TimeUnit unit) {
+		if (period <= 0) throw new IllegalArgumentException("The period must be positive");
+		return schedule(target, message, unit.toNanos(initialDelay), Math.max(unit.toNanos(period), 1));
+	}
+	
+	/**
+	 * Stops the timer's thread. Messages not yet sent never will be.
+	 */
+	public void stop() {
+		int s = STATE.getAndSet(this, STOPPED);
+		if (s == STARTED) ticker.interrupt();
+	}
+	
+	/**
+	 * @return The number of timers waiting, not counting cancelled ones.
+	 */
+	public long pending() {
+		return pending;
+	}
+	
+	/**
+	 * A timer, which can be cancelled.
+	 */
+	public final class Timeout {
+		Timeout(Actor target, Object message, long deadline, long period) {
+			this.target = target;
+			this.message = message;
+			this.deadline = deadline;
+			this.period = period;
+		}
+		
+		/**
+		 * Stops the timer. A message already on its way still arrives.
+		 * 
+		 * @return true if the timer was stopped, false if it had already 
+		 *   gone off, been dropped, or been cancelled.
+		 */
+		public boolean cancel() {
+			if (!TIMEOUT_STATE.compareAndSet(this, WAITING, CANCELLED)) return false;
+			PENDING.decrementAndGet(HashedWheelTimer.this);
+			cancelled.add(this); // The ticker takes it off the wheel
+			return true;
+		}
+		
+		public boolean isCancelled() {
+			return state == CANCELLED;
+		}
+		
+		final Actor target;
+		final Object message;
+		final long period;
+		long deadline; // Nanoseconds since the timer started
+		long rounds; // Times the wheel must go round before this is due
+		int bucket = -1; // The bucket holding this, or -1 
+		Timeout next;
+		Timeout previous;
+		volatile int state;
+	}
+	
+	private Timeout schedule(Actor target, Object message, long delay, long period) {
+		if (target == null) throw new NullPointerException("Expected an actor to send to.");
+		if (message == null) throw new NullPointerException("Cannot send a null message.");
+		
+		start();
+		long deadline = plus(System.nanoTime() - startTime, Math.max(delay, 0));
+		Timeout timeout = new Timeout(target, message, deadline, period);
+		PENDING.incrementAndGet(this);
+		added.add(timeout);
+		return timeout;
+	}
+	
+	private void start() {
+		if (state == NEW) {
+			synchronized (this) {
+				if (state == NEW) {
+					startTime = System.nanoTime();
+					ticker = new Thread(new Ticker(), "Jack timer");
+					ticker.setDaemon(true);
+					if (STATE.compareAndSet(this, NEW, STARTED)) ticker.start(); // Unless stopped meanwhile
+				}
+			}
+		}
+		if (state != STARTED) throw new IllegalStateException("The timer has been stopped.");
+	}
+	
+	// Saturates, so that a delay of Long.MAX_VALUE means never rather than now
+	private static long plus(long time, long delay) {
+		return delay > Long.MAX_VALUE - time ? Long.MAX_VALUE : time + delay;
+	}
+	
+	/*
+	 * Owns the wheel: only this thread touches the buckets and the links 
+	 * between timeouts.
+	 */
+	private final class Ticker implements Runnable {
+		@Override
+		public void run() {
+			long tick = 0;
+			while (state == STARTED) {
+				if (!awaitEndOf(tick)) return;
+				removeCancelled();
+				addNew(tick);
+				expire(tick);
+				tick++;
+			}
+		}
+		
+		private boolean awaitEndOf(long tick) {
+			long end = startTime + (tick + 1) * tickNanos;
+			long wait;
+			while ((wait = end - System.nanoTime()) > 0) {
+				if (Thread.interrupted() || state != STARTED) return false;
+				try {
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				} catch (InterruptedException e) {
+					return false;
+				}
+			}
+			return state == STARTED;
+		}
+		
+		private void removeCancelled() {
+			Timeout timeout;
+			while ((timeout = cancelled.poll()) != null) unlink(timeout);
+		}
+		
+		private void addNew(long tick) {
+			Timeout timeout;
+			for (int i = 0; i < MAX_ADDED_PER_TICK && (timeout = added.poll()) != null; i++) {
+				if (timeout.state == WAITING) insert(timeout, tick);
+			}
+		}
+		
+		private void expire(long tick) {
+			int bucket = (int) (tick & mask);
+			Timeout timeout = wheel[bucket];
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.state != WAITING) {
+					unlink(timeout);
+				} else if (timeout.target.isDead()) {
+					unlink(timeout);
+					if (TIMEOUT_STATE.compareAndSet(timeout, WAITING, EXPIRED)) PENDING.decrementAndGet(HashedWheelTimer.this);
+				} else if (timeout.rounds > 0) {
+					timeout.rounds--;
+				} else {
+					unlink(timeout);
+					fire(timeout, tick);
+				}
+				timeout = next;
+			}
+		}
+		
+		private void fire(Timeout timeout, long tick) {
+			if (timeout.period == 0) {
+				if (!TIMEOUT_STATE.compareAndSet(timeout, WAITING, EXPIRED)) return; // Cancelled meanwhile
+				PENDING.decrementAndGet(HashedWheelTimer.this);
+				send(timeout);
+			} else if (send(timeout)) {
+				timeout.deadline = plus(timeout.deadline, timeout.period);
+				insert(timeout, tick + 1);
+			} else if (TIMEOUT_STATE.compareAndSet(timeout, WAITING, EXPIRED)) {
+				PENDING.decrementAndGet(HashedWheelTimer.this);
+			}
+		}
+		
+		/*
+		 * A send that throws, say because the actor's executor has shut down, 
+		 * must not take the ticker, and every other timer, with it.
+		 */
+		private boolean send(Timeout timeout) {
+			try {
+				timeout.target.send(timeout.message);
+				return true;
+			} catch (RuntimeException e) {
+				return false;
+			}
+		}
+		
+		/*
+		 * A timeout due in the past goes in the next bucket to expire. Rounds
+		 * count from the bucket the timeout is put in.
+		 */
+		private void insert(Timeout timeout, long tick) {
+			long due = Math.max(timeout.deadline / tickNanos, tick);
+			timeout.rounds = (due - tick) / wheel.length;
+			int bucket = (int) (due & mask);
+			timeout.bucket = bucket;
+			timeout.previous = null;
+			timeout.next = wheel[bucket];
+			if (timeout.next != null) timeout.next.previous = timeout;
+			wheel[bucket] = timeout;
+		}
+		
+		private void unlink(Timeout timeout) {
+			if (timeout.bucket < 0) return; // Never added, or already removed
+			if (timeout.previous == null) wheel[timeout.bucket] = timeout.next;
+			else timeout.previous.next = timeout.next;
+			if (timeout.next != null) timeout.next.previous = timeout.previous;
+			timeout.bucket = -1;
+			timeout.next = null;
+			timeout.previous = null;
+		}
+	}
+	
+	private final long tickNanos;
+	private final Timeout[] wheel;
+	private final int mask;
+	private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+	private long startTime; // Set before the state becomes STARTED
+	private volatile int state;
+	private volatile long pending;
+	private Thread ticker; // Set before the state becomes STARTED
+	
+	public static long DEFAULT_TICK_MILLIS = 10;
+	public static int DEFAULT_WHEEL_SIZE = 512;
+	
+	// Keeps one burst of new timers from holding up a tick
+	private static final int MAX_ADDED_PER_TICK = 100000;
+	
+	private static final int NEW = 0;
+	private static final int STARTED = 1;
+	private static final int STOPPED = 2;
+	
+	private static final int WAITING = 0;
+	private static final int CANCELLED = 1;
+	private static final int EXPIRED = 2;
+	
+	private static final AtomicIntegerFieldUpdater<HashedWheelTimer> STATE =
+			AtomicIntegerFieldUpdater.newUpdater(HashedWheelTimer.class, "state");
+	private static final AtomicLongFieldUpdater<HashedWheelTimer> PENDING =
+			AtomicLongFieldUpdater.newUpdater(HashedWheelTimer.class, "pending");
+	private static final AtomicIntegerFieldUpdater<Timeout> TIMEOUT_STATE =
+			AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+}
@@ -0,0 +1,101 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A snapshot of a histogram of durations, in nanoseconds. Durations are
+ * counted in power of two buckets: bucket i holds the durations d with
+ * 2^(i-1) <= d < 2^i, and bucket 0 those of zero. Percentiles are thus
+ * accurate to within a factor of two, which is plenty to spot a slow actor.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public final class LatencyHistogram {
+	/**
+	 * @return The number of durations recorded.
+	 */
+	public long count() {
+		return count;
+	}
+	
+	/**
+	 * @return The mean duration in nanoseconds, or 0 if none were recorded.
+	 */
+	public double mean() {
+		return count == 0 ? 0 : (double) total / count;
+	}
+	
+	/**
+	 * @param fraction The percentile wanted, between 0 and 1, e.g. 0.99.
+	 * @return An upper bound on the given percentile in nanoseconds, or 0 if
+	 *   nothing was recorded.
+	 */
+	public long percentile(double fraction) {
+		if (fraction < 0 || fraction > 1) throw new IllegalArgumentException("The fraction must be between 0 and 1");
+		if (count == 0) return 0;
+		
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets[i];
+			if (seen >= rank) return upperBound(i);
+		}
+		return Long.MAX_VALUE;
+	}
+	
+	/**
+	 * @return The number of durations recorded in bucket i.
+	 */
+	public long bucket(int i) {
+		return buckets[i];
+	}
+	
+	/**
+	 * @return The largest duration counted in bucket i.
+	 */
+	public static long upperBound(int i) {
+		return i == 0 ? 0 : (1L << i) - 1; // Long.MAX_VALUE for the last bucket
+	}
+	
+	@Override
+	public String toString() {
+		return "LatencyHistogram[count=" + count + ", mean=" + (long) mean() + "ns, p50<=" 
+				+ percentile(0.5) + "ns, p99<=" + percentile(0.99) + "ns]";
+	}
+	
+	LatencyHistogram(long[] buckets, long total) {
+		this.buckets = buckets;
+		this.total = total;
+		
+		long count = 0;
+		for (long b: buckets) count += b;
+		this.count = count;
+	}
+	
+	/**
+	 * Records durations. Only one thread at a time may record, but any thread
+	 * may take a snapshot.
+	 */
+	static final class Recorder {
+		void record(long nanos) {
+			int bucket = nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos);
+			buckets.lazySet(bucket, buckets.get(bucket) + 1);
+			buckets.lazySet(BUCKETS, buckets.get(BUCKETS) + Math.max(nanos, 0));
+		}
+		
+		LatencyHistogram snapshot() {
+			long[] copy = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) copy[i] = buckets.get(i);
+			return new LatencyHistogram(copy, buckets.get(BUCKETS));
+		}
+		
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS + 1); // and the total
+	}
+	
+	private final long[] buckets;
+	private final long count;
+	private final long total;
+	
+	static final int BUCKETS = 64;
+}
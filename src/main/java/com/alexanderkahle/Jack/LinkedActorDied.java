@@ -1,5 +1,10 @@
 package com.alexanderkahle.Jack;
 
+/**
+ * The reason an actor dies when an actor linked to it dies. It is a signal
+ * rather than an error, so it carries no stack trace: one is made for every
+ * death with links, and filling in the stack dominated large cascades.
+ */
 public class LinkedActorDied extends Exception {
 	/**
 	 * 
@@ -10,6 +15,7 @@ public class LinkedActorDied extends Exception {
 	public final Throwable reason;
 	
 	public LinkedActorDied(Actor actor, Throwable reason) {
+		super(null, null, false, false);
 		this.actor = actor;
 		this.reason = reason;
 	}
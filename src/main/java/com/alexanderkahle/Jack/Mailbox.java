@@ -0,0 +1,201 @@
+package com.alexanderkahle.Jack;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base class of the bounded mailboxes built by {@link ActorBuilder}.
+ *
+ * Mailboxes have many producers but a single consumer: only the actor owning
+ * the mailbox may take messages out of it. The consumer blocks by parking,
+ * and producers wake it with {@link #signalConsumer()} after enqueueing.
+ *
+ * @author alexanderkahle
+ *
+ */
+abstract class Mailbox extends AbstractQueue<Object> implements BlockingQueue<Object> {
+	Mailbox(int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("The mailbox must have a positive size");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Takes the next message, blocking until there is one. On a fork join
+	 * pool the pool is told that its thread is blocked, so that it can keep
+	 * the other actors running.
+	 */
+	@Override
+	public Object take() throws InterruptedException {
+		return managedPoll(-1L);
+	}
+
+	/**
+	 * Takes the next message, waiting at most the timeout for one. On a fork
+	 * join pool, the wait is managed as in {@link #take()}.
+	 */
+	@Override
+	public Object poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		return nanos <= 0 ? poll() : managedPoll(nanos);
+	}
+
+	@Override
+	public void put(Object message) throws InterruptedException {
+		offer(message, -1L);
+	}
+
+	@Override
+	public boolean offer(Object message, long timeout, TimeUnit unit) throws InterruptedException {
+		return offer(message, Math.max(0L, unit.toNanos(timeout)));
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	@Override
+	public int drainTo(Collection<? super Object> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Object> c, int maxElements) {
+		if (c == this) throw new IllegalArgumentException("Cannot drain a mailbox into itself.");
+
+		int drained = 0;
+		Object message;
+		while (drained < maxElements && (message = poll()) != null) {
+			c.add(message);
+			drained++;
+		}
+		return drained;
+	}
+
+	/**
+	 * Adds all the messages, in order, or none of them if they do not all fit.
+	 * The consumer is signalled once.
+	 *
+	 * @return true if the messages were added, false if the mailbox had no room.
+	 */
+	abstract boolean offerAll(Object[] messages);
+
+	/**
+	 * Adds the message, first taking out the oldest message if the mailbox is
+	 * full. Only mailboxes where producers may take messages support this.
+	 *
+	 * @return The message taken out, or null if there was room.
+	 */
+	Object offerEvictingOldest(Object message) {
+		throw new UnsupportedOperationException("This mailbox cannot drop its oldest messages.");
+	}
+
+	/**
+	 * Wakes the consumer if it is blocked waiting for a message. Producers must
+	 * call this after a message has become visible to {@link #poll()}.
+	 */
+	final void signalConsumer() {
+		Thread waiter = this.waiter;
+		if (waiter != null) LockSupport.unpark(waiter);
+	}
+
+	// A negative timeout waits for ever
+	private Object managedPoll(long nanos) throws InterruptedException {
+		if (!(Thread.currentThread() instanceof ForkJoinWorkerThread)) return poll(nanos);
+		
+		Object message = poll();
+		if (message != null) return message;
+		
+		Taker taker = new Taker(this, nanos);
+		ForkJoinPool.managedBlock(taker);
+		return taker.message;
+	}
+
+	private Object poll(long nanos) throws InterruptedException {
+		Object message = poll();
+		if (message != null || nanos == 0) return message;
+
+		long deadline = nanos > 0 ? System.nanoTime() + nanos : 0L;
+		Thread current = Thread.currentThread();
+
+		waiter = current;
+		try {
+			// The waiter is published before re-checking, so a producer either
+			// sees it or its message is seen here.
+			while ((message = poll()) == null) {
+				if (Thread.interrupted()) throw new InterruptedException();
+
+				if (nanos < 0) {
+					LockSupport.park(this);
+				} else {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) return null;
+					LockSupport.parkNanos(this, remaining);
+				}
+			}
+			return message;
+		} finally {
+			waiter = null;
+		}
+	}
+
+	/*
+	 * Blocking producers are expected to be rare (the actor semantics are to
+	 * fail on a full mailbox), so they back off and retry rather than keep
+	 * a queue of waiting threads.
+	 */
+	private boolean offer(Object message, long nanos) throws InterruptedException {
+		long deadline = nanos > 0 ? System.nanoTime() + nanos : 0L;
+		long backoff = MIN_BACKOFF_NANOS;
+
+		while (!offer(message)) {
+			if (Thread.interrupted()) throw new InterruptedException();
+
+			long park = backoff;
+			if (nanos >= 0) {
+				long remaining = deadline - System.nanoTime();
+				if (nanos == 0 || remaining <= 0) return false;
+				park = Math.min(park, remaining);
+			}
+			LockSupport.parkNanos(this, park);
+			backoff = Math.min(2 * backoff, MAX_BACKOFF_NANOS);
+		}
+		return true;
+	}
+
+	private static final class Taker implements ForkJoinPool.ManagedBlocker {
+		Taker(Mailbox mailbox, long nanos) {
+			this.mailbox = mailbox;
+			this.nanos = nanos;
+		}
+		
+		@Override
+		public boolean block() throws InterruptedException {
+			if (message == null) message = mailbox.poll(nanos);
+			timedOut = message == null;
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return timedOut || message != null || (message = mailbox.poll()) != null;
+		}
+		
+		private final Mailbox mailbox;
+		private final long nanos; // Negative to wait for ever
+		private Object message;
+		private boolean timedOut;
+	}
+	
+	final int capacity;
+
+	private volatile Thread waiter;
+
+	private static final long MIN_BACKOFF_NANOS = 1000L;
+	private static final long MAX_BACKOFF_NANOS = 1000000L;
+}
@@ -0,0 +1,22 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * The kinds of mailbox an {@link ActorBuilder} can give an actor. Both are
+ * bounded by the mailbox size, and only allocate storage as messages arrive.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public enum MailboxType {
+	/**
+	 * Messages are stored in chunks guarded by a lock. Cheapest when few
+	 * actors send to the same actor.
+	 */
+	CHUNKED,
+	
+	/**
+	 * Senders append without taking a lock. Prefer this for actors that many
+	 * actors send to at once, such as aggregators.
+	 */
+	LOCK_FREE
+}
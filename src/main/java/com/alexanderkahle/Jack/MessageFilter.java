@@ -0,0 +1,16 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * Picks the messages a behaviour wants from {@link Actor#receive(MessageFilter, long, java.util.concurrent.TimeUnit)}.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public interface MessageFilter {
+	/**
+	 * Called on the actor's thread. It should be quick, and must not throw.
+	 * 
+	 * @return true to receive the message, false to leave it for later.
+	 */
+	boolean matches(Object message);
+}
@@ -0,0 +1,83 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Keeps the metrics of an actor while it runs. Senders update the received and
+ * dropped counts; everything else is only written by the thread running the
+ * actor, so it needs no atomic read-modify-write.
+ * 
+ * While metrics are kept, messages travel through the mailbox stamped with the
+ * time they were sent, to measure how long they queue.
+ * 
+ * @author alexanderkahle
+ *
+ */
+final class MetricsRecorder {
+	Object stamp(Object message) {
+		return new Stamped(message, System.nanoTime());
+	}
+	
+	/**
+	 * Records that the message has been taken out of the mailbox.
+	 * 
+	 * @return The message without its stamp.
+	 */
+	Object unstamp(Object message) {
+		PROCESSED.lazySet(this, processed + 1);
+		if (!(message instanceof Stamped)) return message;
+		
+		Stamped stamped = (Stamped) message;
+		queueingDelay.record(System.nanoTime() - stamped.sentAt);
+		return stamped.message;
+	}
+	
+	void received() {
+		RECEIVED.incrementAndGet(this);
+	}
+	
+	void received(int count) {
+		RECEIVED.addAndGet(this, count);
+	}
+	
+	void dropped() {
+		DROPPED.incrementAndGet(this);
+	}
+	
+	void dropped(int count) {
+		DROPPED.addAndGet(this, count);
+	}
+	
+	void processingTime(long nanos) {
+		processingTime.record(nanos);
+	}
+	
+	ActorMetrics snapshot(int mailboxDepth) {
+		return new ActorMetrics(received, processed, dropped, mailboxDepth,
+				processingTime.snapshot(), queueingDelay.snapshot());
+	}
+	
+	private static final class Stamped {
+		Stamped(Object message, long sentAt) {
+			this.message = message;
+			this.sentAt = sentAt;
+		}
+		
+		final Object message;
+		final long sentAt;
+	}
+	
+	private final LatencyHistogram.Recorder processingTime = new LatencyHistogram.Recorder();
+	private final LatencyHistogram.Recorder queueingDelay = new LatencyHistogram.Recorder();
+	
+	private volatile long received;
+	private volatile long processed;
+	private volatile long dropped;
+	
+	private static final AtomicLongFieldUpdater<MetricsRecorder> RECEIVED =
+			AtomicLongFieldUpdater.newUpdater(MetricsRecorder.class, "received");
+	private static final AtomicLongFieldUpdater<MetricsRecorder> PROCESSED =
+			AtomicLongFieldUpdater.newUpdater(MetricsRecorder.class, "processed");
+	private static final AtomicLongFieldUpdater<MetricsRecorder> DROPPED =
+			AtomicLongFieldUpdater.newUpdater(MetricsRecorder.class, "dropped");
+}
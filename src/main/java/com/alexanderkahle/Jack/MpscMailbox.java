@@ -0,0 +1,162 @@
+package com.alexanderkahle.Jack;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer mailbox. Messages are
+ * kept in a linked list of nodes: producers append by swapping the tail, and
+ * never contend with the consumer, which owns the head.
+ *
+ * The bound is enforced with a counter that producers reserve a slot in before
+ * appending, so a full mailbox refuses messages just like {@link ChunkedMailbox}.
+ *
+ * @author alexanderkahle
+ *
+ */
+final class MpscMailbox extends Mailbox {
+	MpscMailbox(int capacity) {
+		super(capacity);
+		head = tail = new Node(null);
+	}
+
+	@Override
+	public boolean offer(Object message) {
+		if (message == null) throw new NullPointerException();
+
+		int s;
+		do { // Never overshoots, so a full mailbox that drains takes messages at once
+			s = size;
+			if (s >= capacity) return false;
+		} while (!SIZE.compareAndSet(this, s, s + 1));
+
+		Node node = new Node(message);
+		Node previous = TAIL.getAndSet(this, node);
+		previous.next = node; // Volatile: must be visible before the consumer is signalled
+		signalConsumer();
+		return true;
+	}
+
+	/**
+	 * Reserves room for the whole batch at once, then appends it as a chain of
+	 * nodes with a single swap of the tail.
+	 */
+	@Override
+	boolean offerAll(Object[] messages) {
+		for (Object message: messages) {
+			if (message == null) throw new NullPointerException();
+		}
+		if (messages.length == 0) return true;
+
+		int s;
+		do {
+			s = size;
+			if (messages.length > capacity - s) return false;
+		} while (!SIZE.compareAndSet(this, s, s + messages.length));
+
+		Node first = new Node(messages[0]);
+		Node last = first;
+		for (int i = 1; i < messages.length; i++) {
+			Node node = new Node(messages[i]);
+			last.next = node;
+			last = node;
+		}
+
+		Node previous = TAIL.getAndSet(this, last);
+		previous.next = first;
+		signalConsumer();
+		return true;
+	}
+
+	/**
+	 * Takes the next message. Must only be called by the consumer.
+	 *
+	 * A message whose producer is still between swapping the tail and linking
+	 * its node is not yet visible: that producer signals the consumer once it is.
+	 */
+	@Override
+	public Object poll() {
+		Node next = head.next;
+		if (next == null) return null;
+
+		Object message = next.message;
+		next.message = null;
+		head = next;
+		SIZE.getAndDecrement(this);
+		return message;
+	}
+
+	@Override
+	public Object peek() {
+		Node next = head.next;
+		return next == null ? null : next.message;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return head.next == null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * A weakly consistent iterator over the messages. It does not support removal.
+	 */
+	@Override
+	public Iterator<Object> iterator() {
+		return new Iterator<Object>() {
+			@Override
+			public boolean hasNext() {
+				advance();
+				return nextMessage != null;
+			}
+
+			@Override
+			public Object next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				Object message = nextMessage;
+				nextMessage = null;
+				return message;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Cannot remove messages from a mailbox iterator.");
+			}
+
+			private void advance() {
+				Node next;
+				while (nextMessage == null && (next = node.next) != null) {
+					node = next;
+					nextMessage = next.message; // null if the consumer got there first
+				}
+			}
+
+			private Node node = head;
+			private Object nextMessage;
+		};
+	}
+
+	private static final class Node {
+		Node(Object message) {
+			this.message = message;
+		}
+
+		Object message; // Published by the volatile write of the previous node's next
+		volatile Node next;
+	}
+
+	private Node head; // Owned by the consumer
+	private volatile Node tail;
+	private volatile int size;
+
+	private static final AtomicReferenceFieldUpdater<MpscMailbox, Node> TAIL =
+			AtomicReferenceFieldUpdater.newUpdater(MpscMailbox.class, Node.class, "tail");
+	private static final AtomicIntegerFieldUpdater<MpscMailbox> SIZE =
+			AtomicIntegerFieldUpdater.newUpdater(MpscMailbox.class, "size");
+}
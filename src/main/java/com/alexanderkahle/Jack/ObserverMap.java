@@ -0,0 +1,132 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * The observers of an actor, by observation id. An open addressing hash map
+ * from int to actor, so that ids are not boxed and an observation costs no
+ * more than two array slots.
+ *
+ * Not thread safe: the actor synchronizes on it. Iterate over it
+ * with {@link #slots()}, {@link #keyAt(int)} and {@link #valueAt(int)}, skipping
+ * slots whose value is null.
+ *
+ * @author alexanderkahle
+ *
+ */
+final class ObserverMap {
+	ObserverMap() {
+		keys = new int[MIN_SLOTS];
+		values = new Actor[MIN_SLOTS];
+	}
+
+	/**
+	 * Adds the observer under the id, unless the id is taken.
+	 *
+	 * @return true if the observer was added, false if the id was taken.
+	 */
+	boolean putIfAbsent(int key, Actor value) {
+		if (value == null) throw new NullPointerException("Cannot store a null observer.");
+
+		int mask = keys.length - 1;
+		int i = slotOf(key, mask);
+		while (values[i] != null) {
+			if (keys[i] == key) return false;
+			i = (i + 1) & mask;
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		if (++size > (keys.length >>> 1) + (keys.length >>> 2)) grow(); // Keep the load under 3/4
+		return true;
+	}
+
+	Actor get(int key) {
+		int i = find(key);
+		return i < 0 ? null : values[i];
+	}
+
+	/**
+	 * @return The observer that was removed, or null if there was none.
+	 */
+	Actor remove(int key) {
+		int i = find(key);
+		if (i < 0) return null;
+
+		Actor removed = values[i];
+		size--;
+
+		// Shift later entries of the probe run back, so no tombstones are needed
+		int mask = keys.length - 1;
+		int hole = i;
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			int home = slotOf(keys[j], mask);
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				hole = j;
+			}
+		}
+		values[hole] = null;
+		return removed;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int slots() {
+		return keys.length;
+	}
+
+	int keyAt(int slot) {
+		return keys[slot];
+	}
+
+	Actor valueAt(int slot) {
+		return values[slot];
+	}
+
+	private int find(int key) {
+		int mask = keys.length - 1;
+		for (int i = slotOf(key, mask); values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) return i;
+		}
+		return -1;
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		Actor[] oldValues = values;
+		keys = new int[2 * oldKeys.length];
+		values = new Actor[2 * oldValues.length];
+		size = 0;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) putIfAbsent(oldKeys[i], oldValues[i]);
+		}
+	}
+
+	/*
+	 * Sequential ids would otherwise fill runs of adjacent slots.
+	 */
+	private static int slotOf(int key, int mask) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder("{");
+		for (int i = 0; i < keys.length; i++) {
+			if (values[i] == null) continue;
+			if (s.length() > 1) s.append(", ");
+			s.append(keys[i]).append('=').append(values[i]);
+		}
+		return s.append('}').toString();
+	}
+
+	private int[] keys;
+	private Actor[] values;
+	private int size;
+
+	private static final int MIN_SLOTS = 4;
+}
@@ -0,0 +1,39 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * What {@link Actor#send(Object)} does when the actor's mailbox is full. Set
+ * it with {@link ActorBuilder#overflowStrategy(OverflowStrategy)}. Senders that
+ * would rather find out, whatever the strategy, can use
+ * {@link Actor#trySend(Object)}.
+ *
+ * @author alexanderkahle
+ *
+ */
+public enum OverflowStrategy {
+	/**
+	 * Kills the actor with a {@link BlockedException}. The default: an actor
+	 * that cannot keep up fails fast, and its supervisor can deal with it.
+	 */
+	FAIL,
+
+	/**
+	 * Drops the message being sent.
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * Drops the oldest message in the mailbox to make room. Only
+	 * {@link MailboxType#CHUNKED} mailboxes support this.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Blocks the sender until there is room, or until the block timeout
+	 * passes, when the message is dropped. A batch larger than the mailbox is
+	 * dropped at once. On a {@link ForkJoinDispatcher} the pool is told the
+	 * sender is blocked, so that it can run the receiver meanwhile; on other
+	 * executors, an actor sending to another on the same executor may hold up
+	 * a thread the receiver needs, so use this with care.
+	 */
+	BLOCK
+}
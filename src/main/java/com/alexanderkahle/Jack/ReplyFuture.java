@@ -0,0 +1,147 @@
+package com.alexanderkahle.Jack;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * The reply target of an {@link Actor#ask(Object)}. It looks like an actor to
+ * the behaviour answering, but has no mailbox or executor: the first message
+ * sent to it completes the future.
+ *
+ * It observes the actor asked, so that the future fails if that actor dies
+ * before replying. An ObservedDied is therefore never taken as a reply. The
+ * observation ends with the future, and a get that times out ends it, by
+ * cancelling the future, so that asks nobody waits for any more do not pile
+ * up on the actor.
+ *
+ * @author alexanderkahle
+ *
+ */
+final class ReplyFuture extends Actor implements Future<Object> {
+	ReplyFuture(Actor asked) {
+		super(null, null, null, null, null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		this.asked = asked;
+
+		Integer observation = asked.addObserver(this);
+		if (observation == null) {
+			complete(new Failure(null)); // Already dead
+		} else {
+			observationID = observation;
+		}
+	}
+
+	@Override
+	public void send(Object message) {
+		if (message == null) throw new NullPointerException("Cannot send a null message.");
+		reply(message);
+	}
+
+	/**
+	 * @return true if the message was the reply, false if the future was already done.
+	 */
+	@Override
+	public boolean trySend(Object message) {
+		if (message == null) throw new NullPointerException("Cannot send a null message.");
+		return reply(message);
+	}
+
+	/**
+	 * The first message of the batch is the reply.
+	 */
+	@Override
+	public void sendAll(Object[] batch) {
+		for (Object message: batch) {
+			if (message == null) throw new NullPointerException("Cannot send a null message.");
+		}
+		if (batch.length > 0) reply(batch[0]);
+	}
+
+	@Override
+	void sendSystem(Object message) {
+		send(message);
+	}
+
+	@Override
+	public void die(Throwable reason) {
+		if (complete(new Failure(reason))) asked.removeObserver(observationID);
+		super.die(reason);
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (!complete(CANCELLED)) return false;
+		asked.removeObserver(observationID);
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return outcome == CANCELLED;
+	}
+
+	@Override
+	public boolean isDone() {
+		return outcome != PENDING;
+	}
+
+	@Override
+	public Object get() throws InterruptedException, ExecutionException {
+		done.await();
+		return report();
+	}
+
+	@Override
+	public Object get(long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit) && cancel(false)) throw new TimeoutException("No reply in time.");
+		return report(); // Unless the reply came just as we gave up
+	}
+
+	private boolean reply(Object message) {
+		if (message instanceof ObservedDied) {
+			return complete(new Failure(((ObservedDied) message).reason));
+		}
+		if (!complete(message)) return false;
+		asked.removeObserver(observationID);
+		return true;
+	}
+
+	private boolean complete(Object outcome) {
+		if (!OUTCOME.compareAndSet(this, PENDING, outcome)) return false;
+		done.countDown();
+		return true;
+	}
+
+	private Object report() throws ExecutionException {
+		Object outcome = this.outcome;
+		if (outcome == CANCELLED) throw new CancellationException();
+		if (outcome instanceof Failure) throw new ExecutionException(
+				"The actor died without replying.", ((Failure) outcome).reason);
+		return outcome;
+	}
+
+	private static final class Failure {
+		Failure(Throwable reason) {
+			this.reason = reason;
+		}
+
+		final Throwable reason;
+	}
+
+	private final Actor asked;
+	private final CountDownLatch done = new CountDownLatch(1);
+	private int observationID;
+	private volatile Object outcome = PENDING;
+
+	private static final Object PENDING = new Object();
+	private static final Object CANCELLED = new Object();
+
+	private static final AtomicReferenceFieldUpdater<ReplyFuture, Object> OUTCOME =
+			AtomicReferenceFieldUpdater.newUpdater(ReplyFuture.class, Object.class, "outcome");
+}
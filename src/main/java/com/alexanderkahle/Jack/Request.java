@@ -0,0 +1,33 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * The message an actor receives when it is asked something with
+ * {@link Actor#ask(Object)}. The behaviour answers by sending the reply to
+ * {@link #replyTo}, or calling {@link #reply(Object)}.
+ *
+ * @author alexanderkahle
+ *
+ */
+public final class Request {
+	public final Object message;
+	public final Actor replyTo;
+
+	public Request(Object message, Actor replyTo) {
+		if (message == null) throw new NullPointerException("Cannot send a null message.");
+		if (replyTo == null) throw new NullPointerException("Expected an actor to reply to.");
+		this.message = message;
+		this.replyTo = replyTo;
+	}
+
+	/**
+	 * Sends the reply. Only the first reply to an ask is kept.
+	 */
+	public void reply(Object answer) {
+		replyTo.send(answer);
+	}
+
+	@Override
+	public String toString() {
+		return "Request(" + message + ")";
+	}
+}
@@ -0,0 +1,172 @@
+package com.alexanderkahle.Jack;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Sends messages to a pool of actors, picking one for each message by its
+ * {@link RoutingStrategy}. A router is not an actor: it picks on the sending
+ * thread, without a lock, so it is never a bottleneck between the senders and
+ * the pool.
+ * 
+ * Build one with {@link ActorBuilder#buildRouter(RoutingStrategy, int, BehaviourFactory)}.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public final class Router {
+	Router(RoutingStrategy strategy, Actor[] routees) {
+		this.strategy = strategy;
+		this.routees = routees;
+		if (strategy == RoutingStrategy.CONSISTENT_HASH) {
+			long[] nodes = new long[routees.length * VIRTUAL_NODES];
+			for (int i = 0; i < routees.length; i++) {
+				for (int j = 0; j < VIRTUAL_NODES; j++) {
+					int hash = mix(i * VIRTUAL_NODES + j + 1);
+					nodes[i * VIRTUAL_NODES + j] = (long) hash << 32 | i; // Sorts by hash
+				}
+			}
+			Arrays.sort(nodes);
+			ring = new int[nodes.length];
+			owners = new int[nodes.length];
+			for (int k = 0; k < nodes.length; k++) {
+				ring[k] = (int) (nodes[k] >> 32);
+				owners[k] = (int) nodes[k];
+			}
+		} else {
+			ring = null;
+			owners = null;
+		}
+	}
+	
+	/**
+	 * A message with a key to route it by. With {@link RoutingStrategy#CONSISTENT_HASH},
+	 * messages with equal keys go to the same actor.
+	 */
+	public interface Keyed {
+		Object routingKey();
+	}
+	
+	/**
+	 * Sends the message to one of the actors, as {@link Actor#send(Object)}.
+	 */
+	public void send(Object message) {
+		route(message).send(message);
+	}
+	
+	/**
+	 * Sends the message to one of the actors, as {@link Actor#trySend(Object)}.
+	 * 
+	 * @return true if the message was delivered.
+	 */
+	public boolean trySend(Object message) {
+		return route(message).trySend(message);
+	}
+	
+	/**
+	 * Sends the message to every actor in the pool.
+	 */
+	public void broadcast(Object message) {
+		for (Actor routee : routees) routee.send(message);
+	}
+	
+	/**
+	 * Kills every actor in the pool.
+	 * 
+	 * @param reason As for {@link Actor#die(Throwable)}.
+	 */
+	public void die(Throwable reason) {
+		for (Actor routee : routees) routee.die(reason);
+	}
+	
+	/**
+	 * @return The actors in the pool, in the order they were made.
+	 */
+	public List<Actor> routees() {
+		return Collections.unmodifiableList(Arrays.asList(routees));
+	}
+	
+	public int size() {
+		return routees.length;
+	}
+	
+	public RoutingStrategy strategy() {
+		return strategy;
+	}
+	
+	private Actor route(Object message) {
+		if (message == null) throw new NullPointerException("Cannot send a null message");
+		
+		switch (strategy) {
+		case ROUND_ROBIN:
+			return routees[Math.abs(NEXT.getAndIncrement(this) % routees.length)];
+		case SMALLEST_MAILBOX:
+			return smallestMailbox();
+		case RANDOM:
+			return routees[ThreadLocalRandom.current().nextInt(routees.length)];
+		case CONSISTENT_HASH:
+			Object key = message instanceof Keyed ? ((Keyed) message).routingKey() : message;
+			return routees[owner(key == null ? 0 : mix(key.hashCode()))];
+		default:
+			throw new IllegalStateException("Unknown routing strategy: " + strategy);
+		}
+	}
+	
+	/*
+	 * Depths are read without locks, so the answer may be stale by the time
+	 * the message arrives; good enough to balance the load. The scan starts
+	 * from a different actor each time so ties are shared out, and stops at
+	 * the first empty mailbox. Dead actors are passed over.
+	 */
+	private Actor smallestMailbox() {
+		int n = routees.length;
+		int start = Math.abs(NEXT.getAndIncrement(this) % n);
+		Actor best = routees[start];
+		int bestDepth = Integer.MAX_VALUE;
+		for (int k = 0; k < n; k++) {
+			Actor routee = routees[(start + k) % n];
+			int depth = routee.mailboxDepth();
+			if (depth == 0) return routee;
+			if (depth > 0 && depth < bestDepth) {
+				best = routee;
+				bestDepth = depth;
+			}
+		}
+		return best;
+	}
+	
+	// The owner of the first node at or after the hash, wrapping around the ring
+	private int owner(int hash) {
+		int i = Arrays.binarySearch(ring, hash);
+		if (i < 0) i = -i - 1;
+		return owners[i == ring.length ? 0 : i];
+	}
+	
+	// Spreads poor hash codes over the whole ring (the MurmurHash3 finalizer)
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	
+	private final RoutingStrategy strategy;
+	private final Actor[] routees;
+	private final int[] ring;
+	private final int[] owners;
+	private volatile int next;
+	
+	/**
+	 * The nodes each actor has on the consistent hash ring. More nodes spread
+	 * the keys more evenly, at the cost of a larger ring.
+	 */
+	static final int VIRTUAL_NODES = 100;
+	
+	private static final AtomicIntegerFieldUpdater<Router> NEXT =
+			AtomicIntegerFieldUpdater.newUpdater(Router.class, "next");
+}
@@ -0,0 +1,33 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * How a {@link Router} picks the actor to send each message to.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public enum RoutingStrategy {
+	/**
+	 * Each actor in turn.
+	 */
+	ROUND_ROBIN,
+	
+	/**
+	 * The actor with the fewest messages waiting in its mailbox. Best when
+	 * messages take very different times to process.
+	 */
+	SMALLEST_MAILBOX,
+	
+	/**
+	 * An actor picked at random.
+	 */
+	RANDOM,
+	
+	/**
+	 * The same actor for every message with the same key: the 
+	 * {@link Router.Keyed#routingKey() routing key} if the message has one,
+	 * else the message itself. Use it to keep the state for each key in one
+	 * actor. Keys spread evenly over the actors.
+	 */
+	CONSISTENT_HASH
+}
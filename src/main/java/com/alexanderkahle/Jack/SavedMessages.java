@@ -0,0 +1,142 @@
+package com.alexanderkahle.Jack;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Messages taken out of the mailbox but not yet handled: those unstashed, and
+ * those passed over by a selective receive. The actor takes them before the
+ * mailbox, in order, and a receive can take any of them from the middle.
+ * 
+ * Optionally, the messages are also indexed by class, so that finding the
+ * first message of a class costs the number of classes waiting rather than
+ * the number of messages. Nodes taken from the middle stay in the index,
+ * marked removed, until they reach the front of their class.
+ * 
+ * Owned by the thread running the actor.
+ * 
+ * @author alexanderkahle
+ *
+ */
+final class SavedMessages {
+	SavedMessages(boolean indexed) {
+		index = indexed ? new HashMap<Class<?>, ArrayDeque<Node>>() : null;
+	}
+	
+	boolean isEmpty() {
+		return head == null;
+	}
+	
+	void addLast(Object message) {
+		Node node = new Node(message, last++);
+		node.previous = tail;
+		if (tail == null) head = node;
+		else tail.next = node;
+		tail = node;
+		if (index != null) classOf(message).addLast(node);
+	}
+	
+	/**
+	 * Puts the messages in front of those already here, in the same order, and
+	 * empties the deque.
+	 */
+	void addAllFirst(ArrayDeque<Object> messages) {
+		Object message;
+		while ((message = messages.pollLast()) != null) {
+			Node node = new Node(message, --first);
+			node.next = head;
+			if (head == null) tail = node;
+			else head.previous = node;
+			head = node;
+			if (index != null) classOf(message).addFirst(node);
+		}
+	}
+	
+	Object poll() {
+		Node node = head;
+		if (node == null) return null;
+		remove(node);
+		return node.message;
+	}
+	
+	/**
+	 * @return The first message the filter matches, removed, or null if none does.
+	 */
+	Object removeFirst(MessageFilter filter) {
+		for (Node node = head; node != null; node = node.next) {
+			if (filter.matches(node.message)) {
+				remove(node);
+				return node.message;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return The first message of the type, removed, or null if there is none.
+	 */
+	<T> T removeFirst(Class<T> type) {
+		Node found = null;
+		if (index == null) {
+			for (Node node = head; node != null && found == null; node = node.next) {
+				if (type.isInstance(node.message)) found = node;
+			}
+		} else {
+			for (Map.Entry<Class<?>, ArrayDeque<Node>> entry: index.entrySet()) {
+				if (!type.isAssignableFrom(entry.getKey())) continue;
+				Node candidate = entry.getValue().peekFirst(); // Kept purged, so never removed
+				if (candidate != null && (found == null || candidate.sequence < found.sequence)) found = candidate;
+			}
+		}
+		if (found == null) return null;
+		
+		remove(found);
+		return type.cast(found.message);
+	}
+	
+	private void remove(Node node) {
+		if (node.previous == null) head = node.next;
+		else node.previous.next = node.next;
+		if (node.next == null) tail = node.previous;
+		else node.next.previous = node.previous;
+		node.previous = null;
+		node.next = null;
+		node.removed = true;
+		
+		if (index != null) {
+			Class<?> type = node.message.getClass();
+			ArrayDeque<Node> nodes = index.get(type);
+			while (!nodes.isEmpty() && nodes.peekFirst().removed) nodes.pollFirst();
+			if (nodes.isEmpty()) index.remove(type);
+		}
+	}
+	
+	private ArrayDeque<Node> classOf(Object message) {
+		ArrayDeque<Node> nodes = index.get(message.getClass());
+		if (nodes == null) {
+			nodes = new ArrayDeque<>();
+			index.put(message.getClass(), nodes);
+		}
+		return nodes;
+	}
+	
+	private static final class Node {
+		Node(Object message, long sequence) {
+			this.message = message;
+			this.sequence = sequence;
+		}
+		
+		final Object message;
+		final long sequence; // Orders the nodes of different classes
+		Node previous;
+		Node next;
+		boolean removed;
+	}
+	
+	private final Map<Class<?>, ArrayDeque<Node>> index; // null unless indexed
+	private Node head;
+	private Node tail;
+	private long first; // The sequence of the head, counting down as messages go in front
+	private long last; // The sequence for the next message at the back
+}
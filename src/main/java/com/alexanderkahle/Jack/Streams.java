@@ -0,0 +1,54 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * The interfaces of Reactive Streams, with the same methods as those in
+ * java.util.concurrent.Flow. The library still targets Java 7, which has no
+ * Flow, so it declares its own; adapting them to Flow or to
+ * org.reactivestreams takes a few lines.
+ *
+ * See {@link ActorSubscriber} and {@link ActorPublisher} for actors at either
+ * end of a stream.
+ *
+ * @author alexanderkahle
+ *
+ */
+public final class Streams {
+	private Streams() {}
+
+	/**
+	 * A source of items, sent to a subscriber as it asks for them.
+	 */
+	public interface Publisher<T> {
+		void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	/**
+	 * Receives the items of a publisher. The publisher calls its methods one
+	 * at a time: onSubscribe first, then onNext at most as many times as the
+	 * subscriber has asked for, then at most one of onError and onComplete.
+	 */
+	public interface Subscriber<T> {
+		void onSubscribe(Subscription subscription);
+
+		void onNext(T item);
+
+		void onError(Throwable throwable);
+
+		void onComplete();
+	}
+
+	/**
+	 * The link between a publisher and a subscriber.
+	 */
+	public interface Subscription {
+		/**
+		 * Asks for n more items. n must be positive.
+		 */
+		void request(long n);
+
+		/**
+		 * Asks the publisher to stop sending items.
+		 */
+		void cancel();
+	}
+}
@@ -0,0 +1,25 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * Which children a {@link Supervisor} restarts when one of them fails.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public enum SupervisionStrategy {
+	/**
+	 * Just the child that failed. For children that do not depend on each other.
+	 */
+	ONE_FOR_ONE,
+	
+	/**
+	 * Every child. For children that cannot work without each other.
+	 */
+	ONE_FOR_ALL,
+	
+	/**
+	 * The child that failed, and those started after it. For children that 
+	 * depend on those started before them.
+	 */
+	REST_FOR_ONE
+}
@@ -0,0 +1,184 @@
+package com.alexanderkahle.Jack;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An actor that starts children from their {@link ChildSpec}s, and restarts
+ * them when they fail, following its {@link SupervisionStrategy}. Build one
+ * with {@link ActorBuilder#buildSupervisor(SupervisionStrategy, int, long, java.util.concurrent.TimeUnit, ChildSpec...)}.
+ * 
+ * A child fails when it dies with a reason; one that finishes, dying with
+ * none, is not restarted. A restarted child is a new actor, so look it up
+ * with {@link #child(int)} rather than keeping hold of it. It reuses the
+ * mailbox of the actor it replaces when that is no longer in use, emptied;
+ * a message sent just as the old one died may still reach the new one.
+ * 
+ * The supervisor watches its children, rather than trapping exits, and its
+ * children are linked to it one way: they die with it, but it does not die
+ * with them. If it restarts more often than it is allowed, it dies with the
+ * reason the last child failed, so that its own supervisor, if any, can 
+ * restart it and all its children afresh.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public final class Supervisor extends Actor {
+	Supervisor(Executor executor, Map<Integer, Actor> observers, Set<Actor> links,
+			BlockingQueue<Object> messages, IDGenerator generator,
+			int throughput, long throughputDeadline, MetricsRecorder metrics,
+			OverflowStrategy overflowStrategy, long blockTimeout, boolean indexMessages,
+			SupervisionStrategy strategy, int maxRestarts, long window, ChildSpec[] specs) {
+		super(SUPERVISING, executor, observers, links, messages, generator, false,
+				throughput, throughputDeadline, metrics, overflowStrategy, blockTimeout, indexMessages);
+		this.strategy = strategy;
+		this.maxRestarts = maxRestarts;
+		this.window = window;
+		this.specs = specs;
+		this.children = new AtomicReferenceArray<>(specs.length);
+		this.watches = new Integer[specs.length];
+	}
+	
+	/**
+	 * @param index The child's position in the specs the supervisor was built with.
+	 * @return The child's current actor.
+	 */
+	public Actor child(int index) {
+		return children.get(index);
+	}
+	
+	public int childCount() {
+		return children.length();
+	}
+	
+	/**
+	 * @return The number of times the supervisor has restarted children.
+	 */
+	public int restarts() {
+		return restarts;
+	}
+	
+	void startChildren() {
+		synchronized (lock) {
+			for (int i = 0; i < specs.length; i++) start(i, null);
+		}
+	}
+	
+	private void childDied(Actor child, Throwable reason) throws Throwable {
+		synchronized (lock) {
+			restartChild(child, reason);
+		}
+	}
+	
+	private void restartChild(Actor child, Throwable reason) throws Throwable {
+		int index = -1;
+		for (int i = 0; i < specs.length; i++) {
+			if (children.get(i) == child) index = i;
+		}
+		if (index < 0) return; // Already replaced
+		
+		watches[index] = null;
+		removeLinkInternal(child);
+		if (reason == null) return; // Finished
+		if (!mayRestart()) throw reason;
+		
+		int from = strategy == SupervisionStrategy.ONE_FOR_ALL ? 0 : index;
+		int to = strategy == SupervisionStrategy.ONE_FOR_ONE ? index + 1 : specs.length;
+		for (int i = to - 1; i >= from; i--) { // In the reverse of the order they started
+			if (i != index) stop(i);
+		}
+		for (int i = from; i < to; i++) start(i, spareMailbox(children.get(i)));
+		restarts++;
+	}
+	
+	/*
+	 * Restarts are allowed while fewer than maxRestarts fell inside the
+	 * window. Only those are kept, oldest first, so a large maxRestarts costs
+	 * nothing until the restarts happen.
+	 */
+	private boolean mayRestart() {
+		if (maxRestarts == 0) return false;
+		
+		long now = System.nanoTime();
+		while (!restartTimes.isEmpty() && now - restartTimes.peekFirst() >= window) {
+			restartTimes.removeFirst();
+		}
+		if (restartTimes.size() >= maxRestarts) return false;
+		restartTimes.addLast(now);
+		return true;
+	}
+	
+	private void start(int index, BlockingQueue<Object> messages) {
+		Actor child = specs[index].start(index, messages);
+		children.set(index, child);
+		if (!linkInternal(child)) { // We are dying
+			child.die(null);
+			return;
+		}
+		watches[index] = child.addObserver(new ChildWatch(child));
+	}
+	
+	private void stop(int index) {
+		Actor child = children.get(index);
+		Integer watch = watches[index];
+		if (watch != null) child.removeObserver(watch);
+		watches[index] = null;
+		removeLinkInternal(child);
+		child.die(null);
+	}
+	
+	private static BlockingQueue<Object> spareMailbox(Actor child) {
+		BlockingQueue<Object> messages = child.takeSpareMailbox();
+		if (messages != null) messages.clear();
+		return messages;
+	}
+	
+	private final class ChildWatch extends DeathWatch {
+		ChildWatch(Actor child) {
+			this.child = child;
+		}
+		
+		@Override
+		void died(Throwable reason) {
+			Supervisor.this.sendSystem(new ChildDied(child, reason));
+		}
+		
+		private final Actor child;
+	}
+	
+	private static final class ChildDied {
+		ChildDied(Actor child, Throwable reason) {
+			this.child = child;
+			this.reason = reason;
+		}
+		
+		final Actor child;
+		final Throwable reason;
+	}
+	
+	private final SupervisionStrategy strategy;
+	private final int maxRestarts;
+	private final long window; // nanoseconds
+	private final ChildSpec[] specs;
+	private final AtomicReferenceArray<Actor> children;
+	private final Integer[] watches; // Guarded by lock
+	private final ArrayDeque<Long> restartTimes = new ArrayDeque<>(); // Guarded by lock
+	private volatile int restarts;
+	// Not this: the supervisor is an actor, which user code may lock
+	private final Object lock = new Object();
+	
+	private static final Behaviour SUPERVISING = new Behaviour() {
+		@Override
+		public Behaviour run(Actor self, Object message) throws Throwable {
+			if (message instanceof ChildDied) {
+				ChildDied died = (ChildDied) message;
+				((Supervisor) self).childDied(died.child, died.reason);
+			}
+			return this;
+		}
+	};
+}
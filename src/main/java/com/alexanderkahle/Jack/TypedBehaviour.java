@@ -0,0 +1,130 @@
+package com.alexanderkahle.Jack;
+
+/**
+ * A behaviour that hands each message to the handler registered for its
+ * class, in place of a chain of instanceofs. Build one with a
+ * {@link TypedBehaviourBuilder}.
+ * 
+ * A message goes to the handler for its class, else for its nearest
+ * superclass, else for the first registered interface it implements, else to
+ * the fallback. The answer is cached per class, so after the first message of
+ * a class dispatch is a single lookup in a table keyed by class.
+ * 
+ * Building the table costs more than an instanceof chain, so build a typed
+ * behaviour once and reuse it, rather than once per message. Handlers return
+ * {@link #SAME} to keep it. It is safe to share between actors.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public final class TypedBehaviour implements Behaviour {
+	TypedBehaviour(Class<?>[] types, Handler<Object>[] handlers, Handler<Object> otherwise) {
+		this.types = types;
+		this.handlers = handlers;
+		this.otherwise = otherwise;
+		
+		int capacity = 8;
+		while (capacity < 2 * types.length) capacity <<= 1;
+		Object[] table = new Object[2 * capacity];
+		for (int i = 0; i < types.length; i++) put(table, types[i], handlers[i]);
+		this.table = table;
+		this.size = types.length;
+	}
+	
+	/**
+	 * Handles the messages of one class.
+	 * 
+	 * @param <T> The class of the messages.
+	 */
+	public interface Handler<T> {
+		/**
+		 * @return The actor's next behaviour: {@link TypedBehaviour#SAME} to 
+		 *   keep this one, or null to terminate.
+		 */
+		Behaviour handle(Actor self, T message) throws Throwable;
+	}
+	
+	@Override
+	public Behaviour run(Actor self, Object message) throws Throwable {
+		Behaviour next = handlerFor(message.getClass()).handle(self, message);
+		return next == SAME ? this : next;
+	}
+	
+	/**
+	 * Returned by a handler to keep the typed behaviour it belongs to.
+	 */
+	public static final Behaviour SAME = new Behaviour() {
+		@Override
+		public Behaviour run(Actor self, Object message) {
+			throw new IllegalStateException("SAME is a marker, not a behaviour.");
+		}
+	};
+	
+	Handler<Object> handlerFor(Class<?> type) {
+		Object[] table = this.table;
+		int mask = table.length - 2;
+		for (int i = index(type, mask); ; i = (i + 2) & mask) {
+			Object key = table[i];
+			if (key == type) {
+				@SuppressWarnings("unchecked")
+				Handler<Object> handler = (Handler<Object>) table[i + 1];
+				return handler;
+			}
+			if (key == null) return cache(type, resolve(type));
+		}
+	}
+	
+	private Handler<Object> resolve(Class<?> type) {
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			for (int i = 0; i < types.length; i++) {
+				if (types[i] == c) return handlers[i];
+			}
+		}
+		for (int i = 0; i < types.length; i++) {
+			if (types[i].isInterface() && types[i].isAssignableFrom(type)) return handlers[i];
+		}
+		return otherwise;
+	}
+	
+	/*
+	 * Readers never lock: the table is replaced whole, never changed in place.
+	 */
+	private synchronized Handler<Object> cache(Class<?> type, Handler<Object> handler) {
+		Object[] table = this.table;
+		if (2 * (size + 1) > table.length / 2) { // Keep it at most half full
+			Object[] larger = new Object[2 * table.length];
+			for (int i = 0; i < table.length; i += 2) {
+				if (table[i] != null) put(larger, (Class<?>) table[i], table[i + 1]);
+			}
+			table = larger;
+		} else {
+			table = table.clone();
+		}
+		if (put(table, type, handler)) size++;
+		this.table = table;
+		return handler;
+	}
+	
+	private static boolean put(Object[] table, Class<?> type, Object handler) {
+		int mask = table.length - 2;
+		for (int i = index(type, mask); ; i = (i + 2) & mask) {
+			if (table[i] == type) return false; // Cached meanwhile
+			if (table[i] == null) {
+				table[i] = type;
+				table[i + 1] = handler;
+				return true;
+			}
+		}
+	}
+	
+	private static int index(Class<?> type, int mask) {
+		int h = System.identityHashCode(type);
+		return ((h ^ (h >>> 16)) << 1) & mask;
+	}
+	
+	private final Class<?>[] types; // In the order registered
+	private final Handler<Object>[] handlers;
+	private final Handler<Object> otherwise;
+	private volatile Object[] table; // Alternating class and handler
+	private int size; // Guarded by this
+}
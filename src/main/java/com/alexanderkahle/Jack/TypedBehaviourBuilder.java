@@ -0,0 +1,85 @@
+package com.alexanderkahle.Jack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alexanderkahle.Jack.TypedBehaviour.Handler;
+
+/**
+ * Builds {@link TypedBehaviour}s. Typically used as follows
+ * <code>builder.on(Ping.class, onPing).on(Stop.class, onStop).build()</code>.
+ * 
+ * Note, this is not threadsafe.
+ * 
+ * @author alexanderkahle
+ *
+ */
+public class TypedBehaviourBuilder {
+	public TypedBehaviourBuilder() {
+		reset();
+	}
+	
+	/**
+	 * Builds the behaviour with the handlers registered so far. Resets the
+	 * builder.
+	 * 
+	 * @return A new behaviour.
+	 */
+	public TypedBehaviour build() {
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Handler<Object>[] handlers = this.handlers.toArray(new Handler[this.handlers.size()]);
+		TypedBehaviour behaviour = new TypedBehaviour(types.toArray(new Class<?>[types.size()]), handlers, otherwise);
+		reset();
+		return behaviour;
+	}
+	
+	/**
+	 * Registers the handler for messages of the type, and of its subtypes
+	 * that have no handler of their own.
+	 * 
+	 * @throws IllegalArgumentException If the type already has a handler, is
+	 *   primitive, so no message could have it, or is Object, which would
+	 *   take every message from the interface handlers: use 
+	 *   {@link #otherwise(Handler)} instead.
+	 */
+	public <T> TypedBehaviourBuilder on(Class<T> type, Handler<? super T> handler) {
+		if (type == null) throw new NullPointerException("Expected a message type.");
+		if (handler == null) throw new NullPointerException("Expected a handler.");
+		if (type.isPrimitive()) throw new IllegalArgumentException("Messages are never primitive: use " + type + "'s wrapper");
+		if (type == Object.class) throw new IllegalArgumentException("Use otherwise to handle every other message");
+		if (types.contains(type)) throw new IllegalArgumentException(type + " already has a handler");
+		
+		@SuppressWarnings("unchecked") // Only ever called with messages of the type
+		Handler<Object> h = (Handler<Object>) handler;
+		types.add(type);
+		handlers.add(h);
+		return this;
+	}
+	
+	/**
+	 * Sets the handler for messages no other handler takes. By default they
+	 * are ignored.
+	 */
+	public TypedBehaviourBuilder otherwise(Handler<Object> handler) {
+		if (handler == null) throw new NullPointerException("Expected a handler.");
+		otherwise = handler;
+		return this;
+	}
+	
+	private void reset() {
+		types = new ArrayList<>();
+		handlers = new ArrayList<>();
+		otherwise = IGNORE;
+	}
+	
+	private List<Class<?>> types;
+	private List<Handler<Object>> handlers;
+	private Handler<Object> otherwise;
+	
+	private static final Handler<Object> IGNORE = new Handler<Object>() {
+		@Override
+		public Behaviour handle(Actor self, Object message) {
+			return TypedBehaviour.SAME;
+		}
+	};
+}
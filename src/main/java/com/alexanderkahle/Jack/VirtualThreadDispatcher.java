@@ -0,0 +1,84 @@
+package com.alexanderkahle.Jack;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An executor that runs each turn of an actor on its own virtual thread. It
+ * needs a Java 21 or later runtime: use {@link #isSupported()} to check.
+ *
+ * A virtual thread blocked in {@link Actor#takeNextMessage()}, in a sleep, or
+ * in blocking IO gives its carrier thread back, so thousands of actors can
+ * wait at once without tying up a thread pool. Behaviours run this way should
+ * avoid blocking while holding a monitor, which pins the carrier thread.
+ *
+ * The library itself still targets Java 7, so virtual threads are looked up
+ * reflectively when the class is loaded.
+ *
+ * @author alexanderkahle
+ *
+ */
+public class VirtualThreadDispatcher implements Executor {
+	/**
+	 * Creates a dispatcher whose threads are named jack-actor-0, jack-actor-1, ...
+	 *
+	 * @throws UnsupportedOperationException If the runtime has no virtual threads.
+	 */
+	public VirtualThreadDispatcher() {
+		this("jack-actor-");
+	}
+
+	/**
+	 * Creates a dispatcher naming its threads with the given prefix and a counter.
+	 *
+	 * @throws UnsupportedOperationException If the runtime has no virtual threads.
+	 */
+	public VirtualThreadDispatcher(String namePrefix) {
+		if (!isSupported()) throw new UnsupportedOperationException(
+				"Virtual threads need a Java 21 or later runtime.");
+		if (namePrefix == null) throw new NullPointerException("Expected a name prefix.");
+
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = NAME.invoke(builder, namePrefix, 0L);
+			factory = (ThreadFactory) FACTORY.invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Could not create virtual threads.", e);
+		}
+	}
+
+	/**
+	 * @return true if the runtime supports virtual threads.
+	 */
+	public static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		factory.newThread(command).start();
+	}
+
+	private final ThreadFactory factory;
+
+	private static final Method OF_VIRTUAL;
+	private static final Method NAME;
+	private static final Method FACTORY;
+
+	static {
+		Method ofVirtual = null, name = null, factory = null;
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+			ofVirtual.invoke(null); // Fails where virtual threads are only a preview
+		} catch (ReflectiveOperationException e) {
+			ofVirtual = null; // Before Java 21
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		FACTORY = factory;
+	}
+}
@@ -6,7 +6,9 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -14,7 +16,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -37,15 +45,16 @@ public class ActorTest {
 
 
 		Actor testActor = new Actor(fakeBehaviour, fakeExecutor, /* observers */ null, /* links */ null, 
-				messages, /* generator */ null, /* isSystem */ false);
+				messages, /* generator */ null, /* isSystem */ false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		
 		
 		testActor.run();
 		
 		assertEquals("The executor was called on the actor after a message was added",
 				fakeExecutor.calledOn, testActor);
-		assertEquals("The executor was called until the message queue was empty",
-				fakeExecutor.callCount, 2);
+		assertEquals("The executor was called once for the remaining message",
+				fakeExecutor.callCount, 1);
 		assertEquals("The behaviour called with the messages in order that was added",
 				fakeBehaviour.messages, expectedMessageOrder);
 		assertEquals("The behaviour was with the actor as self",
@@ -63,7 +72,8 @@ public class ActorTest {
 		ArrayBlockingQueue<Object> messages = new ArrayBlockingQueue<>(10);
 		
 		Actor testActor = new Actor(fakeBehaviour, fakeExecutor, /* observers */ null, /* links */ null, 
-				messages, /* generator */ null, /* isSystem */ false);
+				messages, /* generator */ null, /* isSystem */ false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		
 		assertNull("The executor was not called until a message was added",
 				fakeExecutor.calledOn);
@@ -80,8 +90,8 @@ public class ActorTest {
 		
 		assertEquals("The executor was called on the actor after a message was added",
 				fakeExecutor.calledOn, testActor);
-		assertEquals("The executor was called twice after a message was added",
-				fakeExecutor.callCount, 2); // Once to run, once to test there are no more messages.
+		assertEquals("The executor was called once after a message was added",
+				fakeExecutor.callCount, 1);
 		assertEquals("The behaviour called with the message that was added",
 				fakeBehaviour.messages.get(0), message);
 		assertEquals("The behaviour called once with the message that was added",
@@ -111,15 +121,16 @@ public class ActorTest {
 		expectedMessageOrder.add(addedMessage);
 
 		Actor testActor = new Actor(fakeBehaviour, fakeExecutor, /* observers */ null, /* links */ null, 
-				messages, /* generator */ null, /* isSystem */ false);
+				messages, /* generator */ null, /* isSystem */ false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		
 		
 		testActor.send(addedMessage);
 		
 		assertEquals("The executor was called on the actor after a message was added",
 				fakeExecutor.calledOn, testActor);
-		assertEquals("The executor was called until the message queue was empty",
-				fakeExecutor.callCount, 4);
+		assertEquals("The executor was called once per message",
+				fakeExecutor.callCount, 3);
 		assertEquals("The behaviour called with the messages in order that was added",
 				fakeBehaviour.messages, expectedMessageOrder);
 		assertEquals("The behaviour was with the actor as self",
@@ -140,7 +151,8 @@ public class ActorTest {
 		messages.add(message1);
 		
 		Actor testActor = new Actor(fakeBehaviour, fakeExecutor, /* observers */ null, /* links */ null, 
-				messages, /* generator */ null, /* isSystem */ false);
+				messages, /* generator */ null, /* isSystem */ false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		
 		testActor.send(addedMessage);
 		
@@ -159,7 +171,8 @@ public class ActorTest {
 		ExecutorStub ex = new ExecutorStub();
 		ArrayBlockingQueue<Object> ms = new ArrayBlockingQueue<>(10);
 		Actor a = new Actor(beh, ex, /* observers */ null, /* links */ null, 
-				ms, /* generator */ null, /* isSystem */ false); 
+				ms, /* generator */ null, /* isSystem */ false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false); 
 		
 		a.run();
 		assertEquals("The behaviour was not called", beh.callCount, 0);
@@ -217,7 +230,8 @@ public class ActorTest {
 		ArrayBlockingQueue<Object> ms = new ArrayBlockingQueue<>(10);
 		ms.add(new Object());
 		Actor a = new Actor(beh, null, /* observers */ null, /* links */ null, 
-				ms, /* generator */ null, /* isSystem */ false); 
+				ms, /* generator */ null, /* isSystem */ false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false); 
 		a.die(null);
 		a.run();
 		assertEquals(beh.callCount, 0);
@@ -228,7 +242,8 @@ public class ActorTest {
 		ArrayBlockingQueue<Object> ms = new ArrayBlockingQueue<>(10);
 		
 		Actor a = new Actor(beh, null, /* observers */ null, /* links */ null, 
-				ms, /* generator */ null, /* isSystem */ false); 
+				ms, /* generator */ null, /* isSystem */ false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false); 
 		a.die(null);
 		a.send(new Object());
 		assertEquals(beh.callCount, 0);		
@@ -238,10 +253,12 @@ public class ActorTest {
 		BehaviourStub beh = new BehaviourStub();
 		ExecutorStub ex = new ExecutorStub();
 		ArrayBlockingQueue<Object> ms = new ArrayBlockingQueue<>(10);
-		Actor watcher = new Actor(beh, ex, null, null, ms, null, false);
+		Actor watcher = new Actor(beh, ex, null, null, ms, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		HashMap<Integer, Actor> observers = new HashMap<>();
 		Actor toDie = new Actor(null, null, observers, null, null, 
-				new DeterministicIDGenerator(), false);
+				new DeterministicIDGenerator(), false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		Throwable reason = new NullPointerException("Foo");
 		
 		int observationID = toDie.addObserver(watcher);
@@ -256,10 +273,12 @@ public class ActorTest {
 		BehaviourStub beh = new BehaviourStub();
 		ExecutorStub ex = new ExecutorStub();
 		ArrayBlockingQueue<Object> ms = new ArrayBlockingQueue<>(10);
-		Actor watcher = new Actor(beh, ex, null, null, ms, null, false);
+		Actor watcher = new Actor(beh, ex, null, null, ms, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		HashMap<Integer, Actor> observers = new HashMap<>();
 		Actor toDie = new Actor(null, null, observers, null, null, 
-				new DeterministicIDGenerator(), false);
+				new DeterministicIDGenerator(), false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		Throwable reason = new NullPointerException("Foo");
 		
 		int observationID = toDie.addObserver(watcher);
@@ -276,10 +295,12 @@ public class ActorTest {
 		ExecutorStub ex = new ExecutorStub();
 		DeterministicIDGenerator idg = new DeterministicIDGenerator();
 		ArrayBlockingQueue<Object> ms = new ArrayBlockingQueue<>(10);
-		Actor watcher = new Actor(beh, ex, null, null, ms, null, false);
+		Actor watcher = new Actor(beh, ex, null, null, ms, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		HashMap<Integer, Actor> observers = new HashMap<>();
 		Actor toDie = new Actor(null, null, observers, null, null, 
-				idg, false);
+				idg, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		Throwable reason = new NullPointerException("Foo");
 		
 		idg.nextID = 0;
@@ -304,12 +325,15 @@ public class ActorTest {
 
 		DeterministicIDGenerator idg = new DeterministicIDGenerator();
 
-		Actor w1 = new Actor(beh1, ex, null, null, ms1, null, false);
-		Actor w2 = new Actor(beh2, ex, null, null, ms2, null, false);
+		Actor w1 = new Actor(beh1, ex, null, null, ms1, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		Actor w2 = new Actor(beh2, ex, null, null, ms2, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		
 		HashMap<Integer, Actor> observers = new HashMap<>();
 		Actor toDie = new Actor(null, null, observers, null, null, 
-				idg, false);
+				idg, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		Throwable reason = new NullPointerException("Foo");
 		
 		idg.nextID = 0;
@@ -335,12 +359,15 @@ public class ActorTest {
 
 		DeterministicIDGenerator idg = new DeterministicIDGenerator();
 
-		Actor w1 = new Actor(beh1, ex, null, null, ms1, null, false);
-		Actor w2 = new Actor(beh2, ex, null, null, ms2, null, false);
+		Actor w1 = new Actor(beh1, ex, null, null, ms1, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		Actor w2 = new Actor(beh2, ex, null, null, ms2, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		
 		HashMap<Integer, Actor> observers = new HashMap<>();
 		Actor toDie = new Actor(null, null, observers, null, null, 
-				idg, false);
+				idg, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		Throwable reason = new NullPointerException("Foo");
 		
 		idg.nextID = 0;
@@ -356,11 +383,47 @@ public class ActorTest {
 		assertEquals("The second watcher was not called", beh2.messages.size(), 0);
 	}
 	
+	@Test public void testActorsWithoutObserversCanBeObserved() {
+		BehaviourStub beh = new BehaviourStub();
+		Actor watcher = new Actor(beh, new ExecutorStub(), null, null, 
+				new ArrayBlockingQueue<>(10), null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		Actor toDie = new Actor(null, null, null, null, null, 
+				new DeterministicIDGenerator(), false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		Throwable reason = new NullPointerException("Foo");
+		
+		int observationID = toDie.addObserver(watcher);
+		toDie.die(reason);
+		
+		assertEquals("The observer was told of the death", 
+				new ObservedDied(observationID, reason), beh.messages.get(0));
+		assertNull("A dead actor cannot be observed", toDie.addObserver(watcher));
+	}
+	
+	@Test public void testObservationsAreNumberedInOrderByDefault() {
+		Actor watcher = new Actor(null, null, null, null, null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		Map<Integer, Actor> observers = new HashMap<>();
+		observers.put(1, watcher);
+		Actor observed = new ActorBuilder()
+				.initialBehaviour(new BehaviourStub())
+				.executor(new ExecutorStub())
+				.observers(observers)
+				.build();
+		
+		assertEquals("The first observation is 0", Integer.valueOf(0), observed.addObserver(watcher));
+		assertEquals("Ids already taken are skipped", Integer.valueOf(2), observed.addObserver(watcher));
+		observed.removeObserver(0);
+		assertEquals("Removed ids are not reused", Integer.valueOf(3), observed.addObserver(watcher));
+	}
+	
 	@Test public void testLinksDie() {
 		HashSet<Actor> l1 = new HashSet<>();
 		ActorWithStubbedDie stub = new ActorWithStubbedDie(null, null, null, l1, null, null, false);
 		HashSet<Actor> l2 = new HashSet<>();
-		Actor toDie = new Actor(null, null, null, l2, null, null, false);
+		Actor toDie = new Actor(null, null, null, l2, null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		Throwable reason = new NullPointerException("Foo");
 
 		toDie.link(stub);
@@ -377,7 +440,8 @@ public class ActorTest {
 		ArrayBlockingQueue<Object> ms = new ArrayBlockingQueue<>(10);
 		Throwable reason = new NullPointerException("foo");
 		LinkedActorDied deathMessage = new LinkedActorDied(null, reason);
-		Actor a = new Actor(beh, ex, null, null, ms, null, true);
+		Actor a = new Actor(beh, ex, null, null, ms, null, true,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		Object nextMessage = new Object();
 		
 		a.die(deathMessage);
@@ -398,8 +462,10 @@ public class ActorTest {
 		HashSet<Actor> links = new HashSet<>();
 		Throwable reason = new NullPointerException("foo");
 
-		Actor subject = new Actor(beh, ex, null, links, ms, null, true);
-		Actor linked = new Actor(null, null, null, null, null, null, false);
+		Actor subject = new Actor(beh, ex, null, links, ms, null, true,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		Actor linked = new Actor(null, null, null, null, null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		links.add(linked);
 
 		LinkedActorDied deathMessage = new LinkedActorDied(linked, reason);
@@ -409,11 +475,118 @@ public class ActorTest {
 		assertFalse("The subject has removed the linked actor", links.contains(linked));
 	}	
 	
+	@Test public void testDeathSignalsHaveNoStackTrace() {
+		HashSet<Actor> links = new HashSet<>();
+		ActorWithStubbedDie stub = new ActorWithStubbedDie(null, null, null, links, null, null, false);
+		Actor toDie = new Actor(null, null, null, new HashSet<Actor>(), null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		
+		toDie.link(stub);
+		toDie.die(null);
+		
+		assertEquals("The LinkedActorDied has no stack trace", 0, stub.reason.getStackTrace().length);
+		assertEquals("The BlockedException has no stack trace", 
+				0, new BlockedException().getStackTrace().length);
+	}
+	
+	@Test public void testKillingALongChainDoesNotOverflowTheStack() {
+		Actor[] chain = new Actor[200000];
+		BehaviourStub last = new BehaviourStub();
+		for (int i = 0; i < chain.length; i++) {
+			chain[i] = new Actor(last, new ExecutorStub(), null, new HashSet<Actor>(), 
+					new ArrayBlockingQueue<>(1), null, false,
+					1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+			if (i > 0) chain[i - 1].link(chain[i]);
+		}
+		
+		chain[0].die(null);
+		chain[chain.length - 1].send(new Object());
+		
+		assertEquals("The end of the chain died", 0, last.callCount);
+	}
+	
+	@Test public void testActorsWithoutLinksCanBeLinked() {
+		ActorWithStubbedDie stub = new ActorWithStubbedDie(null, null, null, null, null, null, false);
+		Actor toDie = new Actor(null, null, null, null, null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		
+		assertTrue("The link was made", toDie.link(stub));
+		toDie.die(null);
+		
+		assertTrue("The linked actor was killed.", stub.killed);
+		assertFalse("A dead actor cannot be linked", toDie.link(stub));
+	}
+	
+	@Test public void testLinkDeathsOvertakeQueuedMessages() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor supervisor = new Actor(beh, ex, null, null, new ArrayBlockingQueue<>(10), null, true,
+				10, 0L, null,
+				OverflowStrategy.FAIL, 0L, false);
+		Actor worker = new Actor(null, null, null, null, null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		supervisor.link(worker);
+		
+		supervisor.send("backlog 1");
+		supervisor.send("backlog 2");
+		worker.die(null);
+		ex.runPending();
+		
+		assertEquals("The supervisor got every message", 3, beh.messages.size());
+		assertEquals("The death came first", worker,
+				((LinkedActorDied) beh.messages.get(0)).actor);
+		assertEquals("The backlog came after", "backlog 1", beh.messages.get(1));
+	}
+	
+	@Test public void testObservedDeathsOvertakeQueuedMessages() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor watcher = new Actor(beh, ex, null, null, new ArrayBlockingQueue<>(1), null, false,
+				10, 0L, null,
+				OverflowStrategy.FAIL, 0L, false);
+		Actor toDie = new Actor(null, null, null, null, null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		Throwable reason = new NullPointerException("Foo");
+		
+		watcher.send("backlog"); // Fills the mailbox
+		int observationID = toDie.addObserver(watcher);
+		toDie.die(reason);
+		ex.runPending();
+		
+		assertEquals("The death did not overflow the mailbox", 2, beh.messages.size());
+		assertEquals("The death came first", new ObservedDied(observationID, reason), beh.messages.get(0));
+	}
+	
+	@Test public void testSystemMessagesWakeTakeNextMessage() throws InterruptedException {
+		final List<Object> taken = new ArrayList<>();
+		ThreadExecutor ex = new ThreadExecutor();
+		Actor supervisor = new Actor(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				taken.add(self.takeNextMessage());
+				return null;
+			}
+		}, ex, null, null, new ArrayBlockingQueue<>(10), null, true,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		Actor worker = new Actor(null, null, null, null, null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		supervisor.link(worker);
+		
+		supervisor.send("start");
+		Thread.sleep(20); // Let the behaviour block
+		worker.die(null);
+		ex.myThread.join(1000);
+		
+		assertEquals("The behaviour took one message", 1, taken.size());
+		assertTrue("It was the death", taken.get(0) instanceof LinkedActorDied);
+	}
+	
 	@Test public void testUnlinking() {
 		HashSet<Actor> l1 = new HashSet<>();
 		ActorWithStubbedDie stub = new ActorWithStubbedDie(null, null, null, l1, null, null, false);
 		HashSet<Actor> l2 = new HashSet<>();
-		Actor toDie = new Actor(null, null, null, l2, null, null, false);
+		Actor toDie = new Actor(null, null, null, l2, null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		Throwable reason = new NullPointerException("Foo");
 
 		toDie.link(stub);
@@ -436,12 +609,14 @@ public class ActorTest {
 		ArrayBlockingQueue<Object> ms1 = new ArrayBlockingQueue<>(10);
 		HashMap<Integer, Actor> observers = new HashMap<>();
 		DeterministicIDGenerator idg = new DeterministicIDGenerator();
-		Actor toDie = new Actor(waitBehaviour, threadExecutor, observers, null, ms1, idg, false);
+		Actor toDie = new Actor(waitBehaviour, threadExecutor, observers, null, ms1, idg, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		
 		BehaviourStub obs = new BehaviourStub();
 		ExecutorStub ex = new ExecutorStub();
 		ArrayBlockingQueue<Object> ms2 = new ArrayBlockingQueue<>(10);
-		Actor observer = new Actor(obs, ex, null, null, ms2, null, false);
+		Actor observer = new Actor(obs, ex, null, null, ms2, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		
 		Throwable reason = new NullPointerException("A reason");
 		
@@ -488,7 +663,8 @@ public class ActorTest {
 		NeedsTwoMessagesBehaviour blockingBehaviour = new NeedsTwoMessagesBehaviour();
 		ThreadExecutor threadExecutor = new ThreadExecutor();
 		ArrayBlockingQueue<Object> ms1 = new ArrayBlockingQueue<>(10);
-		Actor a = new Actor(blockingBehaviour, threadExecutor, null, null, ms1, null, false);
+		Actor a = new Actor(blockingBehaviour, threadExecutor, null, null, ms1, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 
 		String firstMessage = "First message";
 		String secondMessage = "Second Message";
@@ -496,6 +672,7 @@ public class ActorTest {
 		try {
 			Thread.sleep(10);
 			a.send(secondMessage);
+			threadExecutor.myThread.join(1000);
 		} catch (InterruptedException e) {
 			fail("The thread was interrupted on sleep");
 		}
@@ -517,7 +694,8 @@ public class ActorTest {
 		};
 		Executor ex = new ThreadExecutor();
 		ArrayBlockingQueue<Object> mq = new ArrayBlockingQueue<>(10);
-		Actor a = new Actor(beh, ex, null, null, mq, null, false);
+		Actor a = new Actor(beh, ex, null, null, mq, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
 		mq.add(new Object());
 		boolean exceptionThrown = false;
 		a.send(new Object()); // start the actor
@@ -538,6 +716,571 @@ public class ActorTest {
 		a.die(null);
 	}
 	
+	@Test public void testBuilderBuildsWithTheGivenSettings() {
+		BehaviourStub beh = new BehaviourStub();
+		ExecutorStub ex = new ExecutorStub();
+		Actor a = new ActorBuilder()
+				.initialBehaviour(beh)
+				.executor(ex)
+				.build();
+		
+		a.send(new Object());
+		assertEquals("The actor ran on the given executor", 1, ex.callCount);
+		assertEquals("The actor ran the given behaviour", 1, beh.callCount);
+	}
+	
+	@Test public void testSendSchedulesAnIdleActorOnce() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		ArrayBlockingQueue<Object> ms = new ArrayBlockingQueue<>(10);
+		Actor a = new Actor(beh, ex, null, null, ms, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		
+		a.send(1);
+		a.send(2);
+		a.send(3);
+		assertEquals("Only the first send scheduled the actor", 1, ex.pending.size());
+		
+		ex.runPending();
+		assertEquals("All the messages were processed", 3, beh.callCount);
+		assertEquals("No turns are left once the mailbox is empty", 0, ex.pending.size());
+		
+		a.send(4);
+		assertEquals("The idle actor was scheduled again", 1, ex.pending.size());
+	}
+	
+	@Test public void testMessageSentWhileRunningIsNotLost() {
+		final QueueingExecutor ex = new QueueingExecutor();
+		final ArrayBlockingQueue<Object> ms = new ArrayBlockingQueue<>(10);
+		final List<Object> received = new ArrayList<>();
+		Behaviour sendsToSelf = new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				received.add(message);
+				if ("first".equals(message)) self.send("second");
+				return this;
+			}
+		};
+		Actor a = new Actor(sendsToSelf, ex, null, null, ms, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		
+		a.send("first");
+		ex.runPending();
+		
+		assertEquals("The message sent while running was processed", 2, received.size());
+	}
+	
+	@Test public void testNoLostWakeupsUnderConcurrentSends() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			for (int throughput: new int[] { 1, 16 }) {
+				assertAllMessagesProcessed(pool, new ChunkedMailbox(1000000), throughput);
+				assertAllMessagesProcessed(pool, new MpscMailbox(1000000), throughput);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	private void assertAllMessagesProcessed(ExecutorService pool, BlockingQueue<Object> mailbox,
+			int throughput) throws InterruptedException {
+		final int producers = 8;
+		final int messagesPerProducer = 20000;
+		final CountDownLatch processed = new CountDownLatch(producers * messagesPerProducer);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger overlaps = new AtomicInteger();
+		
+		Behaviour counter = new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				if (running.incrementAndGet() != 1) overlaps.incrementAndGet();
+				processed.countDown();
+				running.decrementAndGet();
+				return this;
+			}
+		};
+		final Actor a = new Actor(counter, pool, null, null, mailbox, null, false, throughput, 0L, null,
+				OverflowStrategy.FAIL, 0L, false);
+		
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < messagesPerProducer; i++) a.send(i);
+				}
+			});
+			t.start();
+			threads.add(t);
+		}
+		start.countDown();
+		for (Thread t: threads) t.join();
+		
+		assertTrue("Every message was processed, none were left waiting for a wakeup",
+				processed.await(10, TimeUnit.SECONDS));
+		assertEquals("The behaviour never ran on two threads at once", 0, overlaps.get());
+	}
+	
+	@Test public void testLockingAnActorDoesNotStopIt() throws InterruptedException {
+		final CountDownLatch received = new CountDownLatch(1);
+		Behaviour beh = new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				received.countDown();
+				return this;
+			}
+		};
+		Actor a = new Actor(beh, new ThreadExecutor(), new HashMap<Integer, Actor>(), 
+				new HashSet<Actor>(), new ArrayBlockingQueue<>(10), null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		
+		synchronized (a) {
+			a.send(new Object());
+			assertTrue("The actor processed the message while locked",
+					received.await(1, TimeUnit.SECONDS));
+		}
+		a.die(null);
+	}
+	
+	@Test public void testKillingDoesNotLeakTheInterruptToTheExecutor() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(1);
+		final AtomicBoolean leaked = new AtomicBoolean(false);
+		Behaviour ignoresInterrupts = new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				started.countDown();
+				long end = System.currentTimeMillis() + 50;
+				while (System.currentTimeMillis() < end) {}
+				return this;
+			}
+		};
+		Executor checkingExecutor = new Executor() {
+			@Override
+			public void execute(final Runnable command) {
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						command.run();
+						leaked.set(Thread.currentThread().isInterrupted());
+						finished.countDown();
+					}
+				}).start();
+			}
+		};
+		Actor a = new Actor(ignoresInterrupts, checkingExecutor, null, null, 
+				new ArrayBlockingQueue<>(10), null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		
+		a.send(new Object());
+		started.await();
+		a.die(null);
+		
+		assertTrue("The turn finished", finished.await(1, TimeUnit.SECONDS));
+		assertFalse("The executor's thread was not left interrupted", leaked.get());
+	}
+	
+	@Test public void testActorProcessesUpToThroughputMessagesPerTurn() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		ArrayBlockingQueue<Object> ms = new ArrayBlockingQueue<>(10);
+		for (int i = 0; i < 5; i++) ms.add(i);
+		
+		Actor a = new Actor(beh, ex, null, null, ms, null, false, 3, 0L, null,
+				OverflowStrategy.FAIL, 0L, false);
+		
+		a.run();
+		assertEquals("The first turn processed throughput messages", 3, beh.callCount);
+		assertEquals("The actor handed the thread back once", 1, ex.pending.size());
+		
+		ex.runPending();
+		assertEquals("The second turn processed the remaining messages", 5, beh.callCount);
+		assertEquals("The messages were processed in order", 
+				beh.messages.get(3), 3);
+	}
+	
+	@Test public void testActorYieldsWhenThroughputDeadlinePasses() {
+		Behaviour slow = new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				Thread.sleep(5);
+				return this;
+			}
+		};
+		QueueingExecutor ex = new QueueingExecutor();
+		ArrayBlockingQueue<Object> ms = new ArrayBlockingQueue<>(10);
+		for (int i = 0; i < 5; i++) ms.add(i);
+		
+		Actor a = new Actor(slow, ex, null, null, ms, null, false, 
+				100, TimeUnit.MILLISECONDS.toNanos(1), null,
+				OverflowStrategy.FAIL, 0L, false);
+		
+		a.run();
+		assertEquals("The turn stopped after the deadline", 4, ms.size());
+		assertEquals("The actor handed the thread back", 1, ex.pending.size());
+	}
+	
+	@Test public void testSendAllSchedulesTheActorOnce() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new ActorBuilder().initialBehaviour(beh).executor(ex).throughput(10).build();
+		List<Object> batch = new ArrayList<>();
+		for (int i = 0; i < 5; i++) batch.add(i);
+		
+		a.sendAll(batch);
+		assertEquals("The actor was scheduled once", 1, ex.pending.size());
+		ex.runPending();
+		
+		assertEquals("The actor received the batch in order", batch, beh.messages);
+	}
+	
+	@Test public void testSendAllKillsTheActorIfTheBatchDoesNotFit() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new ActorBuilder().initialBehaviour(beh).executor(ex).mailboxSize(3).build();
+		
+		a.send("first");
+		a.sendAll(new Object[] { 1, 2, 3 });
+		ex.runPending();
+		
+		assertEquals("The actor died before processing anything", 0, beh.callCount);
+	}
+	
+	@Test public void testDropNewestKeepsTheActorAlive() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = overflowingActor(beh, ex, OverflowStrategy.DROP_NEWEST);
+		
+		a.send(1);
+		a.send(2);
+		a.send(3);
+		ex.runPending();
+		
+		assertEquals("The newest message was dropped", Arrays.asList((Object) 1, 2), beh.messages);
+	}
+	
+	@Test public void testDropOldestKeepsTheNewestMessages() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = overflowingActor(beh, ex, OverflowStrategy.DROP_OLDEST);
+		
+		a.send(1);
+		a.send(2);
+		a.send(3);
+		a.sendAll(new Object[] { 4, 5 });
+		ex.runPending();
+		
+		assertEquals("The oldest messages were dropped", Arrays.asList((Object) 4, 5), beh.messages);
+	}
+	
+	@Test public void testBlockWaitsForRoom() throws InterruptedException {
+		BehaviourStub beh = new BehaviourStub();
+		final QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new ActorBuilder().initialBehaviour(beh).executor(ex).mailboxSize(2).throughput(10)
+				.overflowStrategy(OverflowStrategy.BLOCK).blockTimeout(10, TimeUnit.SECONDS).build();
+		a.send(1);
+		a.send(2);
+		
+		Thread consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					return;
+				}
+				ex.runPending();
+			}
+		});
+		consumer.start();
+		a.send(3); // Blocks until the consumer has made room
+		consumer.join(1000);
+		ex.runPending();
+		
+		assertEquals("Every message arrived", Arrays.asList((Object) 1, 2, 3), beh.messages);
+	}
+	
+	@Test public void testBlockDropsTheMessageAfterTheTimeout() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new ActorBuilder().initialBehaviour(beh).executor(ex).mailboxSize(1)
+				.overflowStrategy(OverflowStrategy.BLOCK).blockTimeout(5, TimeUnit.MILLISECONDS).build();
+		
+		a.send(1);
+		a.send(2);
+		ex.runPending();
+		
+		assertEquals("The message that timed out was dropped", Arrays.asList((Object) 1), beh.messages);
+	}
+	
+	@Test(timeout = 2000) public void testBlockDropsABatchLargerThanTheMailbox() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new ActorBuilder().initialBehaviour(beh).executor(ex).mailboxSize(4).metrics(true)
+				.overflowStrategy(OverflowStrategy.BLOCK).build();
+		
+		a.sendAll(new Object[] { 1, 2, 3, 4, 5 }); // Would wait forever for room
+		a.send(6);
+		ex.runPending();
+		
+		assertEquals("The batch was dropped at once", 5, a.metrics().messagesDropped);
+		assertEquals("The actor lives on", Arrays.asList((Object) 6), beh.messages);
+	}
+	
+	@Test public void testTrySendRefusesInsteadOfFailing() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = overflowingActor(beh, ex, OverflowStrategy.FAIL);
+		
+		assertTrue("The first message was sent", a.trySend(1));
+		assertTrue("The second message was sent", a.trySend(2));
+		assertFalse("The full mailbox refused the third", a.trySend(3));
+		ex.runPending();
+		
+		assertEquals("The actor is alive and got its messages", Arrays.asList((Object) 1, 2), beh.messages);
+		a.die(null);
+		assertFalse("A dead actor refuses messages", a.trySend(4));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testLockFreeMailboxesCannotDropTheOldest() {
+		new ActorBuilder().initialBehaviour(new BehaviourStub()).mailboxType(MailboxType.LOCK_FREE)
+				.overflowStrategy(OverflowStrategy.DROP_OLDEST).build();
+	}
+	
+	private Actor overflowingActor(Behaviour b, Executor ex, OverflowStrategy strategy) {
+		return new ActorBuilder().initialBehaviour(b).executor(ex).mailboxSize(2).throughput(10)
+				.overflowStrategy(strategy).build();
+	}
+	
+	@Test public void testUnstashedMessagesComeBeforeTheMailbox() {
+		BehaviourStub recorder = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new ActorBuilder().executor(ex).initialBehaviour(new StashUntilOpen(recorder)).build();
+		
+		a.send(1);
+		a.send(2);
+		a.send(OPEN);
+		a.send(3);
+		ex.runPending();
+		
+		assertEquals("The stashed messages came back first, in order", 
+				Arrays.asList((Object) 1, 2, 3), recorder.messages);
+	}
+	
+	@Test public void testStashIsNotBoundedByTheMailbox() {
+		BehaviourStub recorder = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new ActorBuilder().executor(ex).mailboxSize(2)
+				.initialBehaviour(new StashUntilOpen(recorder)).build();
+		
+		for (int i = 0; i < 5; i++) {
+			a.send(i);
+			ex.runPending();
+		}
+		a.send(OPEN);
+		ex.runPending();
+		
+		assertEquals("Every stashed message came back", 
+				Arrays.asList((Object) 0, 1, 2, 3, 4), recorder.messages);
+		assertFalse("The actor is alive", a.isDead());
+	}
+	
+	@Test public void testMessagesCanOnlyBeStashedOnce() {
+		final List<Throwable> thrown = new ArrayList<>();
+		Actor a = new ActorBuilder().executor(new ExecutorStub()).initialBehaviour(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				self.stash();
+				try {
+					self.stash();
+				} catch (IllegalStateException e) {
+					thrown.add(e);
+				}
+				return this;
+			}
+		}).build();
+		
+		a.send(1);
+		
+		assertEquals("The second stash failed", 1, thrown.size());
+	}
+	
+	@Test(expected = RuntimeException.class) public void testStashFailsOutsideTheBehaviour() {
+		Actor a = new ActorBuilder().executor(new ExecutorStub()).initialBehaviour(new BehaviourStub()).build();
+		a.stash();
+	}
+	
+	@Test public void testReceiveTakesTheMatchAndKeepsTheRest() {
+		final BehaviourStub recorder = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new ActorBuilder().executor(ex).initialBehaviour(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				recorder.run(self, message);
+				recorder.run(self, self.receive(Long.class, 0, TimeUnit.SECONDS));
+				return recorder;
+			}
+		}).build();
+		
+		a.send("start");
+		a.send(1);
+		a.send(2L);
+		a.send(3);
+		ex.runPending();
+		
+		assertEquals("The long came first, and the rest in order", 
+				Arrays.asList((Object) "start", 2L, 1, 3), recorder.messages);
+	}
+	
+	@Test public void testReceiveWaitsForAMatch() throws InterruptedException {
+		final CountDownLatch received = new CountDownLatch(1);
+		final List<Object> results = new ArrayList<>();
+		Actor a = new ActorBuilder().executor(new ThreadExecutor()).initialBehaviour(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				results.add(self.receive(new MessageFilter() {
+					@Override
+					public boolean matches(Object message) {
+						return "reply".equals(message);
+					}
+				}, 5, TimeUnit.SECONDS));
+				received.countDown();
+				return null;
+			}
+		}).build();
+		
+		a.send("start");
+		Thread.sleep(20);
+		a.send("noise");
+		a.send("reply");
+		
+		assertTrue("The reply was received", received.await(5, TimeUnit.SECONDS));
+		assertEquals("It was the reply", Arrays.asList((Object) "reply"), results);
+	}
+	
+	@Test public void testReceiveTimesOut() {
+		final BehaviourStub recorder = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new ActorBuilder().executor(ex).indexMessages(true).initialBehaviour(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				Object reply = self.receive(Long.class, 10, TimeUnit.MILLISECONDS);
+				recorder.run(self, reply == null ? "timeout" : reply);
+				return recorder;
+			}
+		}).build();
+		
+		a.send("start");
+		a.send("noise");
+		ex.runPending();
+		
+		assertEquals("Nothing matched, and the rest was kept", 
+				Arrays.asList((Object) "timeout", "noise"), recorder.messages);
+	}
+	
+	@Test public void testMetricsTrackMessages() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new Actor(beh, ex, null, null, new ArrayBlockingQueue<>(2), null, false,
+				1, 0L, new MetricsRecorder(),
+				OverflowStrategy.FAIL, 0L, false);
+		Object message = new Object();
+		
+		a.send(message);
+		a.send(message);
+		ActorMetrics queued = a.metrics();
+		assertEquals("The accepted messages were counted", 2, queued.messagesReceived);
+		assertEquals("Nothing was processed yet", 0, queued.messagesProcessed);
+		assertEquals("The mailbox is full", 2, queued.mailboxDepth);
+		
+		a.send(message); // Overflows the mailbox, killing the actor
+		assertEquals("The overflowing message was dropped", 1, a.metrics().messagesDropped);
+	}
+	
+	@Test public void testMetricsTimeProcessingAndQueueing() {
+		BehaviourStub beh = new BehaviourStub();
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new Actor(beh, ex, null, null, new ArrayBlockingQueue<>(10), null, false,
+				1, 0L, new MetricsRecorder(),
+				OverflowStrategy.FAIL, 0L, false);
+		Object message = new Object();
+		
+		a.send(message);
+		a.send(message);
+		ex.runPending();
+		
+		ActorMetrics processed = a.metrics();
+		assertEquals("The behaviour got the messages without their timestamps", message, beh.messages.get(0));
+		assertEquals("Both messages were processed", 2, processed.messagesProcessed);
+		assertEquals("The mailbox is empty", 0, processed.mailboxDepth);
+		assertEquals("Each run of the behaviour was timed", 2, processed.processingTime.count());
+		assertEquals("Each message's wait was timed", 2, processed.queueingDelay.count());
+		
+		a.die(null);
+		a.send(message);
+		assertEquals("Messages to the dead actor are dropped", 1, a.metrics().messagesDropped);
+		a.trySend(message);
+		assertEquals("Whichever way they are sent", 2, a.metrics().messagesDropped);
+	}
+	
+	@Test public void testIdleActorsLetGoOfTheirLastMessage() throws InterruptedException {
+		QueueingExecutor ex = new QueueingExecutor();
+		Actor a = new Actor(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				return this;
+			}
+		}, ex, null, null, new ArrayBlockingQueue<>(10), null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		Object message = new byte[1 << 20];
+		WeakReference<Object> handled = new WeakReference<>(message);
+		
+		a.send(message);
+		message = null;
+		ex.runPending();
+		for (int i = 0; i < 50 && handled.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		
+		assertNull("The message was let go of", handled.get());
+	}
+	
+	@Test public void testActorsKeepNoMetricsByDefault() {
+		Actor a = new Actor(new BehaviourStub(), new ExecutorStub(), null, null, 
+				new ArrayBlockingQueue<>(10), null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+		assertNull("There are no metrics", a.metrics());
+	}
+	
+	// Stashes every message until it is sent OPEN, then hands them all to the recorder
+	class StashUntilOpen implements Behaviour {
+		StashUntilOpen(Behaviour recorder) {
+			this.recorder = recorder;
+		}
+		
+		@Override
+		public Behaviour run(Actor self, Object message) {
+			if (message != OPEN) {
+				self.stash();
+				return this;
+			}
+			self.unstashAll();
+			return recorder;
+		}
+		
+		final Behaviour recorder;
+	}
+	
+	static final Object OPEN = new Object();
+	
 	class BehaviourStub implements Behaviour {
 		public List<Object> messages = new ArrayList<>();
 		public Actor self = null;
@@ -580,7 +1323,8 @@ public class ActorTest {
 		ActorWithStubbedDie(Behaviour beh, Executor ex, Map<Integer, Actor> os,  Set<Actor> ls, 
 				BlockingQueue<Object> ms, IDGenerator idg, boolean sys) {
 			super(beh, ex, os, ls, 
-					ms, idg, sys); 
+					ms, idg, sys,
+					1, 0L, null, OverflowStrategy.FAIL, 0L, false); 
 		}
 		
 		@Override
@@ -600,6 +1344,21 @@ public class ActorTest {
 		}
 	}
 	
+	class QueueingExecutor implements Executor {
+		public List<Runnable> pending = new ArrayList<>();
+		
+		@Override
+		public synchronized void execute(Runnable command) {
+			pending.add(command);
+		}
+		
+		public synchronized void runPending() {
+			while (!pending.isEmpty()) {
+				pending.remove(0).run();
+			}
+		}
+	}
+	
 	class DeterministicIDGenerator implements IDGenerator {
 		public int nextID = 0;
 		@Override
@@ -0,0 +1,141 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ChunkedMailboxTest {
+
+	@Test public void testEmptyMailboxAllocatesNothing() {
+		ChunkedMailbox mailbox = new ChunkedMailbox(ActorBuilder.DEFAULT_MAILBOX_SIZE);
+
+		assertEquals("No chunks were allocated", 0, mailbox.allocatedChunks());
+		assertEquals("The full capacity is available",
+				ActorBuilder.DEFAULT_MAILBOX_SIZE, mailbox.remainingCapacity());
+	}
+
+	@Test public void testMessagesAreDeliveredInOrderAcrossChunks() {
+		ChunkedMailbox mailbox = new ChunkedMailbox(1000);
+		int messageCount = 5 * ChunkedMailbox.CHUNK_SIZE + 3;
+
+		for (int i = 0; i < messageCount; i++) {
+			assertTrue("The message was accepted", mailbox.offer(i));
+		}
+		assertEquals("All messages are in the mailbox", messageCount, mailbox.size());
+
+		for (int i = 0; i < messageCount; i++) {
+			assertEquals("The messages came out in order", i, mailbox.poll());
+		}
+		assertNull("The mailbox is empty", mailbox.poll());
+	}
+
+	@Test public void testMailboxRefusesMessagesWhenFull() {
+		ChunkedMailbox mailbox = new ChunkedMailbox(3);
+
+		assertTrue(mailbox.offer("1"));
+		assertTrue(mailbox.offer("2"));
+		assertTrue(mailbox.offer("3"));
+		assertFalse("The full mailbox refused the message", mailbox.offer("4"));
+		assertEquals("There is no capacity left", 0, mailbox.remainingCapacity());
+
+		mailbox.poll();
+		assertTrue("The mailbox accepts messages once drained", mailbox.offer("4"));
+	}
+
+	@Test public void testChunksAreReleasedAsTheyDrain() {
+		ChunkedMailbox mailbox = new ChunkedMailbox(1000);
+
+		for (int i = 0; i < 4 * ChunkedMailbox.CHUNK_SIZE; i++) mailbox.offer(i);
+		assertEquals("The chunks grew with the messages", 4, mailbox.allocatedChunks());
+
+		for (int i = 0; i < 2 * ChunkedMailbox.CHUNK_SIZE; i++) mailbox.poll();
+		assertEquals("The drained chunks were released", 2, mailbox.allocatedChunks());
+
+		while (mailbox.poll() != null) {}
+		assertEquals("At most one chunk is kept when empty", 1, mailbox.allocatedChunks());
+	}
+
+	@Test public void testBatchesArriveInOrderOrNotAtAll() {
+		ChunkedMailbox mailbox = new ChunkedMailbox(100);
+		Object[] batch = new Object[70];
+		for (int i = 0; i < batch.length; i++) batch[i] = i;
+
+		mailbox.offer("first");
+		assertTrue("The batch fitted", mailbox.offerAll(batch));
+		assertFalse("A batch that does not fit is refused", mailbox.offerAll(batch));
+		assertEquals("Nothing of the refused batch was added", 71, mailbox.size());
+
+		assertEquals("Earlier messages come first", "first", mailbox.poll());
+		for (int i = 0; i < batch.length; i++) {
+			assertEquals("The batch came out in order", i, mailbox.poll());
+		}
+		assertNull("The mailbox is empty", mailbox.poll());
+	}
+
+	@Test public void testIteratesInOrder() {
+		ChunkedMailbox mailbox = new ChunkedMailbox(1000);
+		List<Object> expected = new ArrayList<>();
+		for (int i = 0; i < 2 * ChunkedMailbox.CHUNK_SIZE + 1; i++) {
+			mailbox.offer(i);
+			expected.add(i);
+		}
+
+		List<Object> actual = new ArrayList<>();
+		for (Object o: mailbox) actual.add(o);
+		assertEquals("The iterator visits messages in order", expected, actual);
+	}
+
+	@Test public void testTakeBlocksUntilAMessageArrives() {
+		final ChunkedMailbox mailbox = new ChunkedMailbox(10);
+		final Object message = new Object();
+
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					return;
+				}
+				mailbox.offer(message);
+			}
+		});
+		producer.start();
+
+		try {
+			assertEquals("take returned the message", message, mailbox.take());
+		} catch (InterruptedException e) {
+			fail("The consumer was interrupted.");
+		}
+	}
+
+	@Test public void testPollTimesOut() {
+		ChunkedMailbox mailbox = new ChunkedMailbox(10);
+
+		try {
+			assertNull("Timed out without a message", mailbox.poll(10, TimeUnit.MILLISECONDS));
+		} catch (InterruptedException e) {
+			fail("The consumer was interrupted.");
+		}
+	}
+
+	@Test public void testTakeIsInterruptible() {
+		ChunkedMailbox mailbox = new ChunkedMailbox(10);
+
+		Thread.currentThread().interrupt();
+		try {
+			mailbox.take();
+			fail("take returned without a message");
+		} catch (InterruptedException e) {
+			assertFalse("The interrupt was consumed", Thread.currentThread().isInterrupted());
+		}
+	}
+}
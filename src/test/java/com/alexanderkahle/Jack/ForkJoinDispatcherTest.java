@@ -0,0 +1,144 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ForkJoinDispatcherTest {
+	
+	@After public void shutdown() {
+		dispatcher.shutdown();
+	}
+
+	@Test public void testPingPongRunsOnTheDispatcher() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicInteger offPool = new AtomicInteger();
+		
+		class PingPong implements Behaviour {
+			Actor other;
+			
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				if (!(Thread.currentThread() instanceof ForkJoinWorkerThread)) offPool.incrementAndGet();
+				int count = (Integer) message;
+				if (count == 0) {
+					done.countDown();
+				} else {
+					other.send(count - 1);
+				}
+				return this;
+			}
+		}
+		
+		PingPong ping = new PingPong();
+		PingPong pong = new PingPong();
+		ActorBuilder builder = new ActorBuilder();
+		Actor pinger = builder.initialBehaviour(ping).executor(dispatcher).build();
+		Actor ponger = builder.initialBehaviour(pong).executor(dispatcher).build();
+		ping.other = ponger;
+		pong.other = pinger;
+		
+		pinger.send(10000);
+		
+		assertTrue("The ball went back and forth", done.await(5, TimeUnit.SECONDS));
+		assertEquals("Every turn ran on the pool", 0, offPool.get());
+	}
+	
+	@Test public void testBlockingInTakeNextMessageDoesNotStarveThePool() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		final Actor waiter = new ActorBuilder().executor(dispatcher)
+				.initialBehaviour(new Behaviour() {
+					@Override
+					public Behaviour run(Actor self, Object message) throws Throwable {
+						self.takeNextMessage(); // Holds the only thread until the helper runs
+						done.countDown();
+						return this;
+					}
+				})
+				.build();
+		final Actor helper = new ActorBuilder().executor(dispatcher) // build() resets the executor
+				.initialBehaviour(new Behaviour() {
+					@Override
+					public Behaviour run(Actor self, Object message) throws Throwable {
+						waiter.send("second");
+						return this;
+					}
+				})
+				.build();
+		
+		waiter.send("first");
+		Thread.sleep(20);
+		helper.send("go");
+		
+		assertTrue("The pool ran the helper while the waiter was blocked",
+				done.await(5, TimeUnit.SECONDS));
+	}
+	
+	@Test public void testBlockingInReceiveDoesNotStarveThePool() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		final Actor waiter = new ActorBuilder().executor(dispatcher)
+				.initialBehaviour(new Behaviour() {
+					@Override
+					public Behaviour run(Actor self, Object message) throws Throwable {
+						// Holds the only thread until the helper runs
+						if (self.receive(Integer.class, 5, TimeUnit.SECONDS) != null) done.countDown();
+						return this;
+					}
+				})
+				.build();
+		final Actor helper = new ActorBuilder().executor(dispatcher) // build() resets the executor
+				.initialBehaviour(new Behaviour() {
+					@Override
+					public Behaviour run(Actor self, Object message) throws Throwable {
+						waiter.send(2);
+						return this;
+					}
+				})
+				.build();
+		
+		waiter.send("first");
+		Thread.sleep(20);
+		helper.send("go");
+		
+		assertTrue("The pool ran the helper while the waiter was blocked",
+				done.await(5, TimeUnit.SECONDS));
+	}
+	
+	@Test public void testBlockingOnAFullMailboxDoesNotStarveThePool() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(3);
+		final Actor receiver = new ActorBuilder().executor(dispatcher)
+				.mailboxSize(1)
+				.overflowStrategy(OverflowStrategy.BLOCK)
+				.initialBehaviour(new Behaviour() {
+					@Override
+					public Behaviour run(Actor self, Object message) {
+						done.countDown();
+						return this;
+					}
+				})
+				.build();
+		Actor sender = new ActorBuilder().executor(dispatcher)
+				.initialBehaviour(new Behaviour() {
+					@Override
+					public Behaviour run(Actor self, Object message) {
+						for (int i = 0; i < 3; i++) receiver.send(i); // Blocks the only thread
+						return this;
+					}
+				})
+				.build();
+		
+		sender.send("go");
+		
+		assertTrue("The pool ran the receiver while the sender was blocked",
+				done.await(5, TimeUnit.SECONDS));
+	}
+	
+	private final ForkJoinDispatcher dispatcher = new ForkJoinDispatcher(1);
+}
@@ -0,0 +1,132 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+
+	@After public void stopTimer() {
+		timer.stop();
+	}
+	
+	@Test public void testSendAfterWaitsForTheDelay() throws InterruptedException {
+		long start = System.nanoTime();
+		timer.sendAfter(recorder, "late", 20, TimeUnit.MILLISECONDS);
+		
+		assertEquals("The message arrived", "late", received.poll(1, TimeUnit.SECONDS));
+		assertTrue("Not before the delay", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+		assertEquals("Nothing is waiting", 0, timer.pending());
+	}
+	
+	@Test public void testCancelledTimersDoNotSend() throws InterruptedException {
+		HashedWheelTimer.Timeout timeout = timer.sendAfter(recorder, "never", 20, TimeUnit.MILLISECONDS);
+		
+		assertTrue("The timer was cancelled", timeout.cancel());
+		assertFalse("Only once", timeout.cancel());
+		assertTrue("It knows", timeout.isCancelled());
+		assertNull("Nothing arrived", received.poll(100, TimeUnit.MILLISECONDS));
+		assertEquals("Nothing is waiting", 0, timer.pending());
+	}
+	
+	@Test public void testSendEveryRepeatsUntilCancelled() throws InterruptedException {
+		HashedWheelTimer.Timeout timeout = timer.sendEvery(recorder, "tick", 0, 5, TimeUnit.MILLISECONDS);
+		
+		for (int i = 0; i < 3; i++) {
+			assertEquals("The message came again", "tick", received.poll(1, TimeUnit.SECONDS));
+		}
+		assertTrue("The timer was cancelled", timeout.cancel());
+		Thread.sleep(20); // A message may have been on its way
+		received.clear();
+		assertNull("It stopped", received.poll(50, TimeUnit.MILLISECONDS));
+	}
+	
+	@Test public void testTimersOutlastTheWheel() throws InterruptedException {
+		timer.sendAfter(recorder, "later", 30, TimeUnit.MILLISECONDS); // Three times round
+		
+		assertNull("Not the first time round", received.poll(15, TimeUnit.MILLISECONDS));
+		assertEquals("The message arrived", "later", received.poll(1, TimeUnit.SECONDS));
+	}
+	
+	@Test public void testVeryLongDelaysMeanNever() throws InterruptedException {
+		timer.sendAfter(recorder, "never", Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		timer.sendEvery(recorder, "once", 0, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		
+		assertEquals("The first of the periodic ones arrived", "once", received.poll(1, TimeUnit.SECONDS));
+		assertNull("Nothing else did", received.poll(50, TimeUnit.MILLISECONDS));
+		assertEquals("Both are waiting", 2, timer.pending());
+	}
+	
+	@Test public void testTimersForDeadActorsAreDropped() throws InterruptedException {
+		timer.sendAfter(recorder, "once", 1, TimeUnit.HOURS);
+		timer.sendEvery(recorder, "again", 1, 1, TimeUnit.HOURS);
+		assertEquals("Two are waiting", 2, timer.pending());
+		
+		recorder.die(null);
+		
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+		while (timer.pending() > 0 && System.nanoTime() < deadline) Thread.sleep(1);
+		assertEquals("Both were dropped long before they were due", 0, timer.pending());
+	}
+	
+	@Test public void testTimersThatCannotSendAreDropped() throws InterruptedException {
+		Actor rejecting = new ActorBuilder()
+				.executor(new Executor() {
+					@Override
+					public void execute(Runnable command) {
+						throw new RejectedExecutionException("Shut down");
+					}
+				})
+				.initialBehaviour(new Behaviour() {
+					@Override
+					public Behaviour run(Actor self, Object message) {
+						return this;
+					}
+				})
+				.build();
+		timer.sendAfter(rejecting, "once", 0, TimeUnit.MILLISECONDS);
+		timer.sendEvery(rejecting, "again", 0, 1, TimeUnit.MILLISECONDS);
+		timer.sendAfter(recorder, "late", 20, TimeUnit.MILLISECONDS);
+		
+		assertEquals("The other timers still go off", "late", received.poll(1, TimeUnit.SECONDS));
+		assertEquals("The failed timers were dropped", 0, timer.pending());
+	}
+	
+	@Test(expected=IllegalStateException.class) public void testStoppedTimersRefuseTimers() {
+		timer.stop();
+		timer.sendAfter(recorder, "never", 1, TimeUnit.MILLISECONDS);
+	}
+	
+	@Test(expected=IllegalArgumentException.class) public void testPeriodMustBePositive() {
+		timer.sendEvery(recorder, "never", 0, 0, TimeUnit.MILLISECONDS);
+	}
+	
+	// A wheel going round every 8ms, so the tests see it wrap
+	private final HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 8);
+	private final BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+	private final Actor recorder = new ActorBuilder()
+			.executor(new Executor() {
+				@Override
+				public void execute(Runnable command) {
+					command.run();
+				}
+			})
+			.initialBehaviour(new Behaviour() {
+				@Override
+				public Behaviour run(Actor self, Object message) {
+					received.add(message);
+					return this;
+				}
+			})
+			.build();
+}
@@ -0,0 +1,42 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test public void testEmptyHistogram() {
+		LatencyHistogram h = new LatencyHistogram.Recorder().snapshot();
+		
+		assertEquals("Nothing was recorded", 0, h.count());
+		assertEquals("The percentiles of nothing are zero", 0, h.percentile(0.99));
+	}
+	
+	@Test public void testDurationsLandInPowerOfTwoBuckets() {
+		LatencyHistogram.Recorder recorder = new LatencyHistogram.Recorder();
+		recorder.record(0);
+		recorder.record(1);
+		recorder.record(1000);
+		recorder.record(1023);
+		LatencyHistogram h = recorder.snapshot();
+		
+		assertEquals("Zero has its own bucket", 1, h.bucket(0));
+		assertEquals("One is in the first bucket", 1, h.bucket(1));
+		assertEquals("512 to 1023 share a bucket", 2, h.bucket(10));
+		assertEquals("The mean is exact", 2024 / 4.0, h.mean(), 0.001);
+	}
+	
+	@Test public void testPercentilesBoundTheDurations() {
+		LatencyHistogram.Recorder recorder = new LatencyHistogram.Recorder();
+		for (int i = 0; i < 99; i++) recorder.record(100);
+		recorder.record(1000000);
+		LatencyHistogram h = recorder.snapshot();
+		
+		assertEquals("The median is bounded by its bucket", 127, h.percentile(0.5));
+		assertEquals("The 99th percentile is still fast", 127, h.percentile(0.99));
+		assertTrue("The maximum is within a factor of two", 
+				h.percentile(1) >= 1000000 && h.percentile(1) < 2000000);
+	}
+}
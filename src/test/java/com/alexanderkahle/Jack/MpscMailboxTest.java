@@ -0,0 +1,137 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class MpscMailboxTest {
+
+	@Test public void testMessagesAreDeliveredInOrder() {
+		MpscMailbox mailbox = new MpscMailbox(100);
+
+		for (int i = 0; i < 50; i++) mailbox.offer(i);
+		assertEquals("All messages are in the mailbox", 50, mailbox.size());
+
+		for (int i = 0; i < 50; i++) {
+			assertEquals("The messages came out in order", i, mailbox.poll());
+		}
+		assertNull("The mailbox is empty", mailbox.poll());
+		assertTrue("The mailbox is empty", mailbox.isEmpty());
+	}
+
+	@Test public void testMailboxRefusesMessagesWhenFull() {
+		MpscMailbox mailbox = new MpscMailbox(2);
+
+		assertTrue(mailbox.offer("1"));
+		assertTrue(mailbox.offer("2"));
+		assertFalse("The full mailbox refused the message", mailbox.offer("3"));
+		assertEquals("The refused message was not counted", 2, mailbox.size());
+
+		mailbox.poll();
+		assertTrue("The mailbox accepts messages once drained", mailbox.offer("3"));
+	}
+
+	@Test public void testBatchesArriveInOrderOrNotAtAll() {
+		MpscMailbox mailbox = new MpscMailbox(100);
+		Object[] batch = new Object[70];
+		for (int i = 0; i < batch.length; i++) batch[i] = i;
+
+		mailbox.offer("first");
+		assertTrue("The batch fitted", mailbox.offerAll(batch));
+		assertFalse("A batch that does not fit is refused", mailbox.offerAll(batch));
+		assertEquals("Nothing of the refused batch was added", 71, mailbox.size());
+
+		assertEquals("Earlier messages come first", "first", mailbox.poll());
+		for (int i = 0; i < batch.length; i++) {
+			assertEquals("The batch came out in order", i, mailbox.poll());
+		}
+		assertNull("The mailbox is empty", mailbox.poll());
+	}
+
+	@Test public void testIteratesInOrder() {
+		MpscMailbox mailbox = new MpscMailbox(100);
+		List<Object> expected = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			mailbox.offer(i);
+			expected.add(i);
+		}
+		mailbox.poll();
+		expected.remove(0);
+
+		List<Object> actual = new ArrayList<>();
+		for (Object o: mailbox) actual.add(o);
+		assertEquals("The iterator visits the remaining messages in order", expected, actual);
+	}
+
+	@Test public void testConcurrentProducersLoseNoMessages() throws InterruptedException {
+		final int producers = 8;
+		final int messagesPerProducer = 20000;
+		final MpscMailbox mailbox = new MpscMailbox(producers * messagesPerProducer);
+		final CountDownLatch start = new CountDownLatch(1);
+
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < messagesPerProducer; i++) {
+						mailbox.offer(new int[] { producer, i });
+					}
+				}
+			}).start();
+		}
+		start.countDown();
+
+		int[] lastSeen = new int[producers];
+		for (int p = 0; p < producers; p++) lastSeen[p] = -1;
+
+		for (int received = 0; received < producers * messagesPerProducer; received++) {
+			int[] message = (int[]) mailbox.poll(5, TimeUnit.SECONDS);
+			if (message == null) fail("A message was lost.");
+			assertEquals("Each producer's messages arrive in order",
+					lastSeen[message[0]] + 1, message[1]);
+			lastSeen[message[0]] = message[1];
+		}
+		assertNull("No extra messages arrived", mailbox.poll());
+	}
+
+	@Test public void testTakeBlocksUntilAMessageArrives() throws InterruptedException {
+		final MpscMailbox mailbox = new MpscMailbox(10);
+		final Object message = new Object();
+
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					return;
+				}
+				mailbox.offer(message);
+			}
+		}).start();
+
+		assertEquals("take returned the message", message, mailbox.take());
+	}
+
+	@Test public void testOfferTimesOutWhenFull() throws InterruptedException {
+		MpscMailbox mailbox = new MpscMailbox(1);
+		mailbox.offer("1");
+
+		assertFalse("The offer timed out", mailbox.offer("2", 5, TimeUnit.MILLISECONDS));
+	}
+}
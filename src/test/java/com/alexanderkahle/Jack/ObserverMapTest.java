@@ -0,0 +1,72 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ObserverMapTest {
+
+	@Test public void testStoresObserversById() {
+		ObserverMap map = new ObserverMap();
+		Actor a = actor();
+		Actor b = actor();
+		
+		assertTrue("The first id was free", map.putIfAbsent(0, a));
+		assertTrue("The second id was free", map.putIfAbsent(-7, b));
+		assertFalse("A taken id is refused", map.putIfAbsent(0, b));
+		
+		assertEquals("The first observer is found", a, map.get(0));
+		assertEquals("The second observer is found", b, map.get(-7));
+		assertNull("Unknown ids have no observer", map.get(1));
+		assertEquals("There are two observers", 2, map.size());
+	}
+	
+	@Test public void testRemovingKeepsTheOtherObservers() {
+		ObserverMap map = new ObserverMap();
+		Map<Integer, Actor> expected = new HashMap<>();
+		Random random = new Random(1);
+		
+		for (int i = 0; i < 1000; i++) {
+			int id = random.nextInt(200); // Plenty of collisions
+			if (random.nextBoolean()) {
+				Actor a = actor();
+				assertEquals("Adding agrees with a HashMap", 
+						!expected.containsKey(id), map.putIfAbsent(id, a));
+				if (!expected.containsKey(id)) expected.put(id, a);
+			} else {
+				assertEquals("Removing agrees with a HashMap", expected.remove(id), map.remove(id));
+			}
+		}
+		
+		assertEquals("The sizes agree", expected.size(), map.size());
+		for (Map.Entry<Integer, Actor> e: expected.entrySet()) {
+			assertEquals("Every observer is still found", e.getValue(), map.get(e.getKey()));
+		}
+	}
+	
+	@Test public void testIteratesOverEveryObserver() {
+		ObserverMap map = new ObserverMap();
+		for (int i = 0; i < 100; i++) map.putIfAbsent(i, actor());
+		map.remove(50);
+		
+		int seen = 0;
+		for (int i = 0; i < map.slots(); i++) {
+			if (map.valueAt(i) == null) continue;
+			assertEquals("The key is stored with its observer", map.get(map.keyAt(i)), map.valueAt(i));
+			seen++;
+		}
+		assertEquals("Every remaining observer was visited", 99, seen);
+	}
+	
+	private static Actor actor() {
+		return new Actor(null, null, null, null, null, null, false,
+				1, 0L, null, OverflowStrategy.FAIL, 0L, false);
+	}
+}
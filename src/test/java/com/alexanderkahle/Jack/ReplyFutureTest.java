@@ -0,0 +1,191 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+public class ReplyFutureTest {
+
+	@Test public void testAskReturnsTheReply() throws Exception {
+		Actor doubler = actor(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				Request request = (Request) message;
+				request.reply(2 * (Integer) request.message);
+				return this;
+			}
+		});
+		
+		Future<Object> answer = doubler.ask(21);
+		
+		assertTrue("The reply arrived", answer.isDone());
+		assertEquals("The reply is the answer", 42, answer.get());
+	}
+	
+	@Test public void testOnlyTheFirstReplyCounts() throws Exception {
+		Actor chatty = actor(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				((Request) message).reply("first");
+				((Request) message).reply("second");
+				return this;
+			}
+		});
+		
+		assertEquals("The first reply was kept", "first", chatty.ask("?").get());
+	}
+	
+	@Test public void testAskFailsWhenTheActorDiesWithoutReplying() throws InterruptedException {
+		final Throwable reason = new IllegalStateException("Foo");
+		Actor failing = actor(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				throw reason;
+			}
+		});
+		
+		try {
+			failing.ask("?").get();
+			fail("The ask should have failed");
+		} catch (ExecutionException e) {
+			assertSame("The failure is the reason the actor died", reason, e.getCause());
+		}
+	}
+	
+	@Test public void testAskingADeadActorFails() throws InterruptedException {
+		Actor dead = actor(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				((Request) message).reply("too late");
+				return this;
+			}
+		});
+		dead.die(null);
+		
+		Future<Object> answer = dead.ask("?");
+		assertTrue("The ask failed at once", answer.isDone());
+		try {
+			answer.get();
+			fail("The ask should have failed");
+		} catch (ExecutionException e) {
+			// expected
+		}
+	}
+	
+	@Test public void testGetTimesOutAndGivesUp() throws Exception {
+		Actor silent = actor(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				return this;
+			}
+		});
+		
+		Future<Object> answer = silent.ask("?");
+		try {
+			answer.get(10, TimeUnit.MILLISECONDS);
+			fail("There was no reply");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		
+		assertTrue("The ask was cancelled", answer.isCancelled());
+		assertFalse("It cannot be cancelled twice", answer.cancel(false));
+		try {
+			answer.get();
+			fail("A cancelled ask has no reply");
+		} catch (CancellationException e) {
+			// expected
+		}
+		
+		silent.die(null);
+		assertTrue("The death did not change the cancelled ask", answer.isCancelled());
+	}
+	
+	@Test public void testTimedOutAsksStopWatchingTheActor() throws Exception {
+		Actor silent = actor(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				return this;
+			}
+		});
+		
+		for (int i = 0; i < 100; i++) {
+			try {
+				silent.ask("?").get(0, TimeUnit.MILLISECONDS);
+				fail("There was no reply");
+			} catch (TimeoutException e) {
+				// expected
+			}
+		}
+		
+		assertEquals("No observers are left behind", 0, silent.observerCount());
+	}
+	
+	@Test public void testCancelledAsksStopWatchingTheActor() {
+		Actor silent = actor(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				return this;
+			}
+		});
+		
+		Future<Object> answer = silent.ask("?");
+		assertTrue("The ask was cancelled", answer.cancel(false));
+		
+		assertTrue("The ask is cancelled", answer.isCancelled());
+		assertEquals("No observers are left behind", 0, silent.observerCount());
+	}
+	
+	@Test public void testTrySendReplies() throws Exception {
+		final List<Boolean> accepted = new ArrayList<>();
+		Actor replier = actor(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				Request request = (Request) message;
+				accepted.add(request.replyTo.trySend("first"));
+				accepted.add(request.replyTo.trySend("second"));
+				return this;
+			}
+		});
+		
+		assertEquals("The first message is the reply", "first", replier.ask("?").get());
+		assertEquals("Only the first was taken", Arrays.asList(true, false), accepted);
+	}
+	
+	@Test public void testSendAllReplies() throws Exception {
+		Actor replier = actor(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				((Request) message).replyTo.sendAll(Arrays.asList("first", "second"));
+				return this;
+			}
+		});
+		
+		assertEquals("The first of the batch is the reply", "first", replier.ask("?").get());
+	}
+	
+	private static Actor actor(Behaviour b) {
+		return new ActorBuilder().initialBehaviour(b).executor(DIRECT).build();
+	}
+	
+	private static final Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+}
@@ -0,0 +1,188 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+public class RouterTest {
+
+	@Test public void testFactoryMakesEachBehaviour() {
+		final List<Integer> indexes = new ArrayList<>();
+		Router router = new ActorBuilder().executor(IDLE).buildRouter(RoutingStrategy.ROUND_ROBIN, 3,
+				new BehaviourFactory() {
+					@Override
+					public Behaviour create(int index) {
+						indexes.add(index);
+						return IGNORE;
+					}
+				});
+		
+		assertEquals("There are three actors", 3, router.size());
+		assertEquals("Each was made in turn", 3, indexes.size());
+		for (int i = 0; i < 3; i++) assertEquals("Made in order", i, (int) indexes.get(i));
+	}
+	
+	@Test(expected=IllegalArgumentException.class) public void testPoolMustHaveActors() {
+		new ActorBuilder().executor(IDLE).buildRouter(RoutingStrategy.RANDOM, 0, FACTORY);
+	}
+	
+	@Test(expected=NullPointerException.class) public void testFactoryMustMakeBehaviours() {
+		new ActorBuilder().executor(IDLE).buildRouter(RoutingStrategy.RANDOM, 2, new BehaviourFactory() {
+			@Override
+			public Behaviour create(int index) {
+				return null;
+			}
+		});
+	}
+	
+	@Test public void testRoundRobinTakesTurns() {
+		Router router = router(RoutingStrategy.ROUND_ROBIN, 4);
+		
+		for (int i = 0; i < 8; i++) router.send(i);
+		
+		for (Actor routee : router.routees()) assertEquals("Each actor got two", 2, routee.mailboxDepth());
+	}
+	
+	@Test public void testSmallestMailboxAvoidsBusyActors() {
+		Router router = router(RoutingStrategy.SMALLEST_MAILBOX, 3);
+		Actor busy = router.routees().get(0);
+		for (int i = 0; i < 5; i++) busy.send(i);
+		
+		for (int i = 0; i < 4; i++) router.send(i);
+		
+		assertEquals("The busy actor got none", 5, busy.mailboxDepth());
+		assertEquals("The others shared them", 2, router.routees().get(1).mailboxDepth());
+		assertEquals("The others shared them", 2, router.routees().get(2).mailboxDepth());
+	}
+	
+	@Test public void testSmallestMailboxPassesOverTheDead() {
+		Router router = router(RoutingStrategy.SMALLEST_MAILBOX, 2);
+		Actor alive = router.routees().get(1);
+		alive.send("waiting");
+		router.routees().get(0).die(null);
+		
+		router.send("next");
+		
+		assertEquals("The live actor got it", 2, alive.mailboxDepth());
+	}
+	
+	@Test public void testRandomReachesEveryActor() {
+		Router router = router(RoutingStrategy.RANDOM, 4);
+		
+		for (int i = 0; i < 400; i++) router.send(i);
+		
+		int total = 0;
+		for (Actor routee : router.routees()) {
+			assertTrue("Every actor got some", routee.mailboxDepth() > 0);
+			total += routee.mailboxDepth();
+		}
+		assertEquals("Every message was sent", 400, total);
+	}
+	
+	@Test public void testConsistentHashKeepsKeysTogether() {
+		Router router = router(RoutingStrategy.CONSISTENT_HASH, 4);
+		
+		for (int i = 0; i < 10; i++) router.send(new KeyedMessage("alice", i));
+		
+		int holding = 0;
+		for (Actor routee : router.routees()) {
+			if (routee.mailboxDepth() > 0) {
+				holding++;
+				assertEquals("One actor got every message", 10, routee.mailboxDepth());
+			}
+		}
+		assertEquals("Only one actor got any", 1, holding);
+	}
+	
+	@Test public void testConsistentHashSpreadsKeys() {
+		Router router = router(RoutingStrategy.CONSISTENT_HASH, 4);
+		
+		for (int i = 0; i < 1000; i++) router.send(i);
+		
+		for (Actor routee : router.routees()) {
+			assertTrue("Keys are spread evenly", routee.mailboxDepth() > 150);
+		}
+	}
+	
+	@Test public void testBroadcastReachesEveryActor() {
+		Router router = router(RoutingStrategy.ROUND_ROBIN, 3);
+		
+		router.broadcast("all");
+		
+		for (Actor routee : router.routees()) assertEquals("Every actor got it", 1, routee.mailboxDepth());
+	}
+	
+	@Test public void testDieKillsThePool() {
+		Router router = router(RoutingStrategy.ROUND_ROBIN, 3);
+		
+		router.die(null);
+		
+		for (Actor routee : router.routees()) assertEquals("Every actor is dead", -1, routee.mailboxDepth());
+		assertFalse("Nothing can be sent", router.trySend("late"));
+	}
+	
+	@Test public void testRouteesHaveLinksOfTheirOwn() {
+		Actor other = new ActorBuilder().executor(IDLE).initialBehaviour(IGNORE).build();
+		Set<Actor> links = new HashSet<>();
+		links.add(other);
+		Router router = new ActorBuilder().executor(IDLE).links(links)
+				.buildRouter(RoutingStrategy.ROUND_ROBIN, 2, FACTORY);
+		
+		Actor first = router.routees().get(0);
+		Actor second = router.routees().get(1);
+		assertNotSame("Distinct actors", first, second);
+		first.unlink(other);
+		
+		second.die(new IllegalStateException());
+		assertEquals("The second was still linked", -1, other.mailboxDepth());
+		assertEquals("The first kept its own links", 0, first.mailboxDepth());
+	}
+	
+	private static Router router(RoutingStrategy strategy, int size) {
+		return new ActorBuilder().executor(IDLE).buildRouter(strategy, size, FACTORY);
+	}
+	
+	private static final class KeyedMessage implements Router.Keyed {
+		KeyedMessage(String key, int n) {
+			this.key = key;
+			this.n = n;
+		}
+		
+		@Override
+		public Object routingKey() {
+			return key;
+		}
+		
+		final String key;
+		final int n;
+	}
+	
+	// Never runs the actors, so the messages stay in their mailboxes
+	private static final Executor IDLE = new Executor() {
+		@Override
+		public void execute(Runnable command) {}
+	};
+	
+	private static final Behaviour IGNORE = new Behaviour() {
+		@Override
+		public Behaviour run(Actor self, Object message) {
+			return this;
+		}
+	};
+	
+	private static final BehaviourFactory FACTORY = new BehaviourFactory() {
+		@Override
+		public Behaviour create(int index) {
+			return IGNORE;
+		}
+	};
+}
@@ -0,0 +1,82 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class SavedMessagesTest {
+
+	@Test public void testKeepsMessagesInOrder() {
+		SavedMessages saved = new SavedMessages(false);
+		saved.addLast(1);
+		saved.addLast(2);
+		saved.addAllFirst(new ArrayDeque<Object>(Arrays.asList(-1, 0)));
+		
+		for (int i = -1; i <= 2; i++) assertEquals("In order", i, saved.poll());
+		assertTrue("All taken", saved.isEmpty());
+		assertNull("Nothing left", saved.poll());
+	}
+	
+	@Test public void testRemovesTheFirstMatch() {
+		SavedMessages saved = new SavedMessages(false);
+		for (int i = 0; i < 5; i++) saved.addLast(i);
+		
+		assertEquals("The first even number past 0", 2, saved.removeFirst(new MessageFilter() {
+			@Override
+			public boolean matches(Object message) {
+				return (Integer) message > 0 && (Integer) message % 2 == 0;
+			}
+		}));
+		
+		for (int i: new int[] { 0, 1, 3, 4 }) assertEquals("The rest in order", i, saved.poll());
+	}
+	
+	@Test public void testRemovesByClass() {
+		removesByClass(new SavedMessages(false));
+	}
+	
+	@Test public void testRemovesByClassWithAnIndex() {
+		removesByClass(new SavedMessages(true));
+	}
+	
+	@Test public void testIndexSurvivesRemovalsFromTheMiddle() {
+		SavedMessages saved = new SavedMessages(true);
+		saved.addLast("a");
+		saved.addLast("b");
+		saved.addLast(1);
+		saved.addLast("c");
+		
+		saved.removeFirst(new MessageFilter() {
+			@Override
+			public boolean matches(Object message) {
+				return "b".equals(message);
+			}
+		});
+		
+		assertEquals("The first string", "a", saved.removeFirst(String.class));
+		assertEquals("The next string skips the removed one", "c", saved.removeFirst(String.class));
+		assertNull("No strings left", saved.removeFirst(String.class));
+		assertEquals("The integer is left", 1, saved.poll());
+	}
+	
+	private static void removesByClass(SavedMessages saved) {
+		saved.addLast("first");
+		saved.addLast(1);
+		saved.addLast(2L);
+		saved.addLast("second");
+		saved.addAllFirst(new ArrayDeque<Object>(Arrays.asList((Object) 0L)));
+		
+		assertEquals("The first long, put in front", 0L, (long) saved.removeFirst(Long.class));
+		assertEquals("The first number", 1, saved.removeFirst(Number.class));
+		assertEquals("The first string", "first", saved.removeFirst(String.class));
+		assertNull("No doubles", saved.removeFirst(Double.class));
+		assertEquals("The rest in order", 2L, saved.poll());
+		assertEquals("The rest in order", "second", saved.poll());
+		assertTrue("All taken", saved.isEmpty());
+	}
+}
@@ -0,0 +1,221 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class StreamsTest {
+
+	@Test public void testSubscriberNeverOverfillsTheMailbox() {
+		QueueingExecutor ex = new QueueingExecutor();
+		Collector collector = new Collector();
+		Actor consumer = new ActorBuilder().initialBehaviour(collector).executor(ex)
+				.mailboxSize(8).throughput(100).build();
+		ManualSubscription subscription = new ManualSubscription();
+		ActorSubscriber<Integer> subscriber = new ActorSubscriber<>(consumer, 100);
+		subscriber.onSubscribe(subscription);
+		
+		assertEquals("Only asked for what fits in the mailbox", 7, subscription.requested);
+		int next = 0;
+		while (next < 100) {
+			while (subscription.requested > 0 && next < 100) {
+				subscription.requested--;
+				subscriber.onNext(next++);
+			}
+			ex.runPending();
+		}
+		subscriber.onComplete();
+		ex.runPending();
+		
+		assertEquals("Every item and the completion arrived", 101, collector.received.size());
+		assertEquals("The items arrived in order", 99, collector.received.get(99));
+		assertTrue("The completion came last", collector.received.get(100) instanceof ActorSubscriber.Completed);
+		assertTrue("The subscription was never cancelled", !subscription.cancelled);
+	}
+	
+	@Test public void testSubscriberCancelsWhenTheActorDies() {
+		Actor consumer = new ActorBuilder().initialBehaviour(new Collector()).executor(new QueueingExecutor())
+				.build();
+		ManualSubscription subscription = new ManualSubscription();
+		new ActorSubscriber<Integer>(consumer).onSubscribe(subscription);
+		
+		consumer.die(null);
+		
+		assertTrue("The subscription was cancelled", subscription.cancelled);
+	}
+	
+	@Test public void testSubscriberTellsTheActorWhenItsMailboxFillsUp() {
+		QueueingExecutor ex = new QueueingExecutor();
+		Collector collector = new Collector();
+		Actor consumer = new ActorBuilder().initialBehaviour(collector).executor(ex)
+				.mailboxSize(4).build();
+		ManualSubscription subscription = new ManualSubscription();
+		ActorSubscriber<Integer> subscriber = new ActorSubscriber<>(consumer);
+		subscriber.onSubscribe(subscription);
+		for (int i = 0; i < 4; i++) consumer.send("other");
+		
+		subscriber.onNext(1);
+		ex.runPending();
+		subscriber.onNext(2); // Already on its way when the stream was cancelled
+		subscriber.onComplete();
+		ex.runPending();
+		
+		assertTrue("The subscription was cancelled", subscription.cancelled);
+		assertEquals("Only the failure and the other messages arrived", 5, collector.received.size());
+		Object failure = collector.received.get(0);
+		assertTrue("The actor was told first", failure instanceof ActorSubscriber.Failed);
+		assertTrue("The stream was blocked",
+				((ActorSubscriber.Failed) failure).reason instanceof BlockedException);
+		for (int i = 1; i < 5; i++) assertEquals("No item came after it", "other", collector.received.get(i));
+	}
+	
+	@Test public void testPublisherSendsOnlyWhatWasRequested() {
+		final ActorPublisher<Integer>[] publisher = newPublisher();
+		Actor producer = new ActorBuilder().initialBehaviour(new Behaviour() {
+			private int next = 0;
+			
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				if (message instanceof ActorPublisher.Demand) {
+					while (publisher[0].publish(next)) next++;
+				}
+				return this;
+			}
+		}).executor(DIRECT).build();
+		publisher[0] = new ActorPublisher<>(producer);
+		RecordingSubscriber subscriber = new RecordingSubscriber(3);
+		
+		publisher[0].subscribe(subscriber);
+		assertEquals("The subscriber got what it asked for", 3, subscriber.items.size());
+		
+		subscriber.subscription.request(2);
+		assertEquals("And then what it asked for next", 5, subscriber.items.size());
+		assertEquals("The items are in order", 4, subscriber.items.get(4));
+		assertEquals("No demand is left", 0, publisher[0].demand());
+		
+		producer.die(new IllegalStateException("Foo"));
+		assertEquals("The stream failed with the death", "Foo", subscriber.error.getMessage());
+	}
+	
+	@Test public void testPipelineHasBackpressure() throws InterruptedException {
+		ForkJoinDispatcher dispatcher = new ForkJoinDispatcher(2);
+		final int count = 10000;
+		final CountDownLatch done = new CountDownLatch(1);
+		final List<Object> received = new ArrayList<>();
+		Actor consumer = new ActorBuilder().initialBehaviour(new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				if (message instanceof ActorSubscriber.Completed) done.countDown();
+				else received.add(message);
+				return this;
+			}
+		}).executor(dispatcher).mailboxSize(16).build();
+		
+		final ActorPublisher<Integer>[] publisher = newPublisher();
+		Actor producer = new ActorBuilder().initialBehaviour(new Behaviour() {
+			private int next = 0;
+			
+			@Override
+			public Behaviour run(Actor self, Object message) {
+				while (next < count && publisher[0].publish(next)) next++;
+				if (next == count) publisher[0].complete();
+				return this;
+			}
+		}).executor(dispatcher).build();
+		publisher[0] = new ActorPublisher<>(producer);
+		
+		publisher[0].subscribe(new ActorSubscriber<Integer>(consumer));
+		
+		assertTrue("The stream completed", done.await(10, TimeUnit.SECONDS));
+		assertEquals("Every item arrived", count, received.size());
+		assertEquals("In order", count - 1, received.get(count - 1));
+		dispatcher.shutdown();
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ActorPublisher<Integer>[] newPublisher() {
+		return new ActorPublisher[1];
+	}
+	
+	static class Collector implements Behaviour {
+		final List<Object> received = new ArrayList<>();
+		
+		@Override
+		public Behaviour run(Actor self, Object message) {
+			received.add(message);
+			return this;
+		}
+	}
+	
+	static class ManualSubscription implements Streams.Subscription {
+		long requested;
+		boolean cancelled;
+		
+		@Override
+		public void request(long n) {
+			requested += n;
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+	}
+	
+	static class RecordingSubscriber implements Streams.Subscriber<Integer> {
+		RecordingSubscriber(int initialRequest) {
+			this.initialRequest = initialRequest;
+		}
+		
+		@Override
+		public void onSubscribe(Streams.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(initialRequest);
+		}
+
+		@Override
+		public void onNext(Integer item) {
+			items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {}
+		
+		final int initialRequest;
+		final List<Object> items = new ArrayList<>();
+		Streams.Subscription subscription;
+		Throwable error;
+	}
+	
+	static class QueueingExecutor implements Executor {
+		final List<Runnable> pending = new ArrayList<>();
+		
+		@Override
+		public void execute(Runnable command) {
+			pending.add(command);
+		}
+		
+		void runPending() {
+			while (!pending.isEmpty()) pending.remove(0).run();
+		}
+	}
+	
+	private static final Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+}
@@ -0,0 +1,242 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SupervisorTest {
+
+	@Test public void testChildrenStartInOrder() {
+		Supervisor supervisor = supervisor(SupervisionStrategy.ONE_FOR_ONE, 3);
+		
+		assertEquals("Three children", 3, supervisor.childCount());
+		assertEquals("Started in order", list(0, 1, 2), started);
+		for (int i = 0; i < 3; i++) assertFalse("Alive", supervisor.child(i).isDead());
+	}
+	
+	@Test public void testOneForOneRestartsTheFailedChild() {
+		Supervisor supervisor = supervisor(SupervisionStrategy.ONE_FOR_ONE, 3);
+		Actor first = supervisor.child(0);
+		Actor failing = supervisor.child(1);
+		
+		failing.send(FAIL);
+		
+		assertTrue("The failed child died", failing.isDead());
+		assertNotSame("It was replaced", failing, supervisor.child(1));
+		assertFalse("By a live actor", supervisor.child(1).isDead());
+		assertSame("Its siblings were left alone", first, supervisor.child(0));
+		assertEquals("Only it was restarted", list(0, 1, 2, 1), started);
+		assertEquals("One restart", 1, supervisor.restarts());
+		assertNull("Its mailbox went to the new child", failing.takeSpareMailbox());
+	}
+	
+	@Test public void testFailedActorsGiveUpTheirMailbox() {
+		Actor failing = new ActorBuilder().executor(INLINE).childSpec(new BehaviourFactory() {
+			@Override
+			public Behaviour create(int index) {
+				return new Behaviour() {
+					@Override
+					public Behaviour run(Actor self, Object message) throws Throwable {
+						throw new IllegalStateException();
+					}
+				};
+			}
+		}).start(0, null);
+		assertNull("Not while alive", failing.takeSpareMailbox());
+		
+		failing.send("boom");
+		
+		assertNotNull("Once dead, the mailbox is spare", failing.takeSpareMailbox());
+		assertNull("Only once", failing.takeSpareMailbox());
+	}
+	
+	@Test public void testOneForAllRestartsEveryChild() {
+		Supervisor supervisor = supervisor(SupervisionStrategy.ONE_FOR_ALL, 3);
+		Actor first = supervisor.child(0);
+		
+		supervisor.child(1).send(FAIL);
+		
+		assertTrue("The siblings were stopped", first.isDead());
+		assertEquals("All were restarted in order", list(0, 1, 2, 0, 1, 2), started);
+		for (int i = 0; i < 3; i++) assertFalse("Alive", supervisor.child(i).isDead());
+	}
+	
+	@Test public void testRestForOneRestartsLaterChildren() {
+		Supervisor supervisor = supervisor(SupervisionStrategy.REST_FOR_ONE, 3);
+		Actor first = supervisor.child(0);
+		Actor last = supervisor.child(2);
+		
+		supervisor.child(1).send(FAIL);
+		
+		assertSame("Earlier children were left alone", first, supervisor.child(0));
+		assertTrue("Later ones were stopped", last.isDead());
+		assertEquals("Then restarted", list(0, 1, 2, 1, 2), started);
+	}
+	
+	@Test public void testFinishedChildrenAreNotRestarted() {
+		Supervisor supervisor = supervisor(SupervisionStrategy.ONE_FOR_ALL, 2);
+		Actor finishing = supervisor.child(0);
+		
+		finishing.send(STOP);
+		
+		assertTrue("The child finished", finishing.isDead());
+		assertSame("It was not replaced", finishing, supervisor.child(0));
+		assertEquals("No restarts", 0, supervisor.restarts());
+	}
+	
+	@Test public void testRestartedChildrenKeepWorking() {
+		Supervisor supervisor = supervisor(SupervisionStrategy.ONE_FOR_ONE, 1);
+		supervisor.child(0).send(FAIL);
+		
+		supervisor.child(0).send("hello");
+		
+		assertEquals("The new child got the message", list("hello"), received);
+	}
+	
+	@Test public void testTooManyRestartsKillTheSupervisor() {
+		Supervisor supervisor = new ActorBuilder().executor(INLINE)
+				.buildSupervisor(SupervisionStrategy.ONE_FOR_ONE, 2, 1, TimeUnit.MINUTES, spec(), spec());
+		Actor sibling = supervisor.child(1);
+		
+		supervisor.child(0).send(FAIL);
+		supervisor.child(0).send(FAIL);
+		assertFalse("Two restarts are allowed", supervisor.isDead());
+		supervisor.child(0).send(FAIL);
+		
+		assertTrue("The third killed the supervisor", supervisor.isDead());
+		assertTrue("And its children", sibling.isDead());
+		assertEquals("Two restarts", 2, supervisor.restarts());
+	}
+	
+	@Test public void testNoRestartsAllowed() {
+		Supervisor supervisor = new ActorBuilder().executor(INLINE)
+				.buildSupervisor(SupervisionStrategy.ONE_FOR_ONE, 0, 1, TimeUnit.SECONDS, spec());
+		
+		supervisor.child(0).send(FAIL);
+		
+		assertTrue("The supervisor gave up", supervisor.isDead());
+	}
+	
+	@Test public void testRestartsCanBeAllButUnlimited() {
+		Supervisor supervisor = new ActorBuilder().executor(INLINE)
+				.buildSupervisor(SupervisionStrategy.ONE_FOR_ONE, Integer.MAX_VALUE, 1, TimeUnit.MINUTES, spec());
+		
+		for (int i = 0; i < 100; i++) supervisor.child(0).send(FAIL);
+		
+		assertFalse("The supervisor kept going", supervisor.isDead());
+		assertEquals("Every failure was restarted", 100, supervisor.restarts());
+	}
+	
+	@Test public void testOldRestartsDoNotCount() throws InterruptedException {
+		Supervisor supervisor = new ActorBuilder().executor(INLINE)
+				.buildSupervisor(SupervisionStrategy.ONE_FOR_ONE, 1, 5, TimeUnit.MILLISECONDS, spec());
+		
+		supervisor.child(0).send(FAIL);
+		Thread.sleep(20);
+		supervisor.child(0).send(FAIL);
+		
+		assertFalse("The first restart had left the window", supervisor.isDead());
+		assertEquals("Two restarts", 2, supervisor.restarts());
+	}
+	
+	@Test public void testChildrenDieWithTheSupervisor() {
+		Supervisor supervisor = supervisor(SupervisionStrategy.ONE_FOR_ONE, 2);
+		
+		supervisor.die(new IllegalStateException());
+		
+		assertTrue("The children died", supervisor.child(0).isDead());
+		assertTrue("The children died", supervisor.child(1).isDead());
+	}
+	
+	@Test public void testSupervisorsRestartSupervisors() {
+		ActorBuilder builder = new ActorBuilder().executor(INLINE);
+		ChildSpec nested = builder.supervisorSpec(SupervisionStrategy.ONE_FOR_ONE, 0, 1, TimeUnit.SECONDS, spec());
+		Supervisor root = builder.executor(INLINE)
+				.buildSupervisor(SupervisionStrategy.ONE_FOR_ONE, 1, 1, TimeUnit.MINUTES, nested);
+		Supervisor inner = (Supervisor) root.child(0);
+		Actor leaf = inner.child(0);
+		
+		leaf.send(FAIL); // The inner supervisor gives up at once
+		
+		assertTrue("The inner supervisor died", inner.isDead());
+		assertFalse("The root restarted it", root.child(0).isDead());
+		assertNotSame("With a new leaf", leaf, ((Supervisor) root.child(0)).child(0));
+		assertEquals("One restart at the root", 1, root.restarts());
+	}
+	
+	@Test public void testLockingTheSupervisorDoesNotHoldUpRestarts() throws InterruptedException {
+		Supervisor supervisor = supervisor(SupervisionStrategy.ONE_FOR_ONE, 1);
+		final Actor failing = supervisor.child(0);
+		Thread failer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				failing.send(FAIL);
+			}
+		});
+		
+		synchronized (supervisor) {
+			failer.start();
+			failer.join(1000);
+			assertFalse("The restart did not wait for the lock", failer.isAlive());
+		}
+		assertNotSame("The child was replaced", failing, supervisor.child(0));
+	}
+	
+	@Test(expected=IllegalArgumentException.class) public void testWindowMustBePositive() {
+		new ActorBuilder().executor(INLINE).buildSupervisor(SupervisionStrategy.ONE_FOR_ONE, 1, 0, TimeUnit.SECONDS);
+	}
+	
+	private Supervisor supervisor(SupervisionStrategy strategy, int children) {
+		ChildSpec[] specs = new ChildSpec[children];
+		for (int i = 0; i < children; i++) specs[i] = spec();
+		return new ActorBuilder().executor(INLINE).buildSupervisor(strategy, 10, 1, TimeUnit.MINUTES, specs);
+	}
+	
+	private ChildSpec spec() {
+		return new ActorBuilder().executor(INLINE).childSpec(new BehaviourFactory() {
+			@Override
+			public Behaviour create(int index) {
+				started.add(index);
+				return new Behaviour() {
+					@Override
+					public Behaviour run(Actor self, Object message) throws Throwable {
+						if (message == FAIL) throw new IllegalStateException("Failed");
+						if (message == STOP) return null;
+						received.add(message);
+						return this;
+					}
+				};
+			}
+		});
+	}
+	
+	private static List<Object> list(Object... items) {
+		List<Object> list = new ArrayList<>();
+		for (Object item: items) list.add(item);
+		return list;
+	}
+	
+	private final List<Object> started = new ArrayList<>();
+	private final List<Object> received = new ArrayList<>();
+	
+	private static final Object FAIL = new Object();
+	private static final Object STOP = new Object();
+	
+	private static final Executor INLINE = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+}
@@ -0,0 +1,181 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+public class TypedBehaviourTest {
+
+	@Test public void testDispatchesByClass() throws Throwable {
+		TypedBehaviour behaviour = new TypedBehaviourBuilder()
+				.on(String.class, record("string"))
+				.on(Integer.class, record("integer"))
+				.build();
+		
+		behaviour.run(null, "a");
+		behaviour.run(null, 1);
+		behaviour.run(null, "b");
+		
+		assertEquals("Each went to its handler", list("string", "integer", "string"), handled);
+	}
+	
+	@Test public void testNearestSuperclassWins() throws Throwable {
+		TypedBehaviour behaviour = new TypedBehaviourBuilder()
+				.on(Number.class, record("number"))
+				.on(Integer.class, record("integer"))
+				.otherwise(record("object"))
+				.build();
+		
+		behaviour.run(null, 1L);
+		behaviour.run(null, 1);
+		behaviour.run(null, "a");
+		behaviour.run(null, 2L); // Cached
+		
+		assertEquals("The nearest handler took each", list("number", "integer", "object", "number"), handled);
+	}
+	
+	@Test public void testClassesBeatInterfaces() throws Throwable {
+		TypedBehaviour behaviour = new TypedBehaviourBuilder()
+				.on(List.class, record("list"))
+				.on(AbstractList.class, record("abstract list"))
+				.build();
+		
+		behaviour.run(null, new ArrayList<>());
+		
+		assertEquals("The superclass won", list("abstract list"), handled);
+	}
+	
+	@Test public void testInterfacesMatchImplementations() throws Throwable {
+		TypedBehaviour behaviour = new TypedBehaviourBuilder()
+				.on(CharSequence.class, record("chars"))
+				.on(Comparable.class, record("comparable"))
+				.build();
+		
+		behaviour.run(null, "a"); // Both: the first registered wins
+		behaviour.run(null, 1);
+		
+		assertEquals("The interfaces took them", list("chars", "comparable"), handled);
+	}
+	
+	@Test public void testUnhandledMessagesAreIgnored() throws Throwable {
+		TypedBehaviour behaviour = new TypedBehaviourBuilder().on(String.class, record("string")).build();
+		
+		assertSame("The behaviour stays", behaviour, behaviour.run(null, 1));
+		assertEquals("Nothing was handled", list(), handled);
+	}
+	
+	@Test public void testOtherwiseTakesTheRest() throws Throwable {
+		TypedBehaviour behaviour = new TypedBehaviourBuilder()
+				.on(String.class, record("string"))
+				.otherwise(record("other"))
+				.build();
+		
+		behaviour.run(null, 1);
+		
+		assertEquals("The fallback took it", list("other"), handled);
+	}
+	
+	@Test public void testHandlersChooseTheNextBehaviour() throws Throwable {
+		final Behaviour next = new TypedBehaviourBuilder().build();
+		TypedBehaviour behaviour = new TypedBehaviourBuilder()
+				.on(String.class, new TypedBehaviour.Handler<String>() {
+					@Override
+					public Behaviour handle(Actor self, String message) {
+						return "stop".equals(message) ? null : next;
+					}
+				})
+				.build();
+		
+		assertSame("The handler's behaviour", next, behaviour.run(null, "go"));
+		assertNull("Or none", behaviour.run(null, "stop"));
+	}
+	
+	@Test public void testManyClasses() throws Throwable {
+		TypedBehaviour behaviour = new TypedBehaviourBuilder()
+				.on(Number.class, record("number"))
+				.otherwise(record("object"))
+				.build();
+		Object[] numbers = { 1, 1L, 1.0, 1.0f, (short) 1, (byte) 1, BigInteger.ONE, BigDecimal.ONE };
+		Object[] others = { "a", 'a', true, new ArrayList<>(), new HashMap<>(), new HashSet<>(), 
+				new LinkedList<>(), new TreeMap<>(), new Object(), new StringBuilder() };
+		
+		for (int round = 0; round < 2; round++) {
+			handled.clear();
+			for (Object n: numbers) behaviour.run(null, n);
+			for (Object o: others) behaviour.run(null, o);
+			
+			for (int i = 0; i < numbers.length; i++) assertEquals("Numbers", "number", handled.get(i));
+			for (int i = numbers.length; i < handled.size(); i++) assertEquals("The rest", "object", handled.get(i));
+		}
+	}
+	
+	@Test public void testRunsInAnActor() {
+		final List<Object> seen = new ArrayList<>();
+		Actor a = new ActorBuilder()
+				.executor(new Executor() {
+					@Override
+					public void execute(Runnable command) {
+						command.run();
+					}
+				})
+				.initialBehaviour(new TypedBehaviourBuilder()
+						.on(Integer.class, new TypedBehaviour.Handler<Integer>() {
+							@Override
+							public Behaviour handle(Actor self, Integer message) {
+								seen.add(message * 2);
+								return TypedBehaviour.SAME;
+							}
+						})
+						.build())
+				.build();
+		
+		a.send(1);
+		a.send("ignored");
+		a.send(2);
+		
+		assertEquals("The actor kept the typed behaviour", list(2, 4), seen);
+	}
+	
+	@Test(expected=IllegalArgumentException.class) public void testOneHandlerPerClass() {
+		new TypedBehaviourBuilder().on(String.class, record("a")).on(String.class, record("b"));
+	}
+	
+	@Test(expected=IllegalArgumentException.class) public void testObjectIsRefused() {
+		new TypedBehaviourBuilder().on(Object.class, record("object"));
+	}
+	
+	@Test(expected=IllegalArgumentException.class) public void testPrimitivesAreRefused() {
+		new TypedBehaviourBuilder().on(int.class, record("int"));
+	}
+	
+	private TypedBehaviour.Handler<Object> record(final String name) {
+		return new TypedBehaviour.Handler<Object>() {
+			@Override
+			public Behaviour handle(Actor self, Object message) {
+				handled.add(name);
+				return TypedBehaviour.SAME;
+			}
+		};
+	}
+	
+	private static List<Object> list(Object... items) {
+		List<Object> list = new ArrayList<>();
+		for (Object item: items) list.add(item);
+		return list;
+	}
+	
+	private final List<Object> handled = new ArrayList<>();
+}
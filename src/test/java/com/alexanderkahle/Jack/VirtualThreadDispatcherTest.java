@@ -0,0 +1,53 @@
+package com.alexanderkahle.Jack;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class VirtualThreadDispatcherTest {
+
+	@Test public void testUnsupportedRuntimesRefuse() {
+		Assume.assumeTrue(!VirtualThreadDispatcher.isSupported());
+		
+		try {
+			new VirtualThreadDispatcher();
+			fail("Created a virtual thread dispatcher without virtual threads");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+	
+	@Test public void testManyActorsCanWaitInTakeNextMessage() throws InterruptedException {
+		Assume.assumeTrue(VirtualThreadDispatcher.isSupported());
+		
+		int actorCount = 5000;
+		final CountDownLatch done = new CountDownLatch(actorCount);
+		ActorBuilder builder = new ActorBuilder();
+		VirtualThreadDispatcher dispatcher = new VirtualThreadDispatcher();
+		Behaviour waitsForASecondMessage = new Behaviour() {
+			@Override
+			public Behaviour run(Actor self, Object message) throws Throwable {
+				self.takeNextMessage();
+				done.countDown();
+				return this;
+			}
+		};
+		
+		List<Actor> actors = new ArrayList<>();
+		for (int i = 0; i < actorCount; i++) {
+			Actor a = builder.initialBehaviour(waitsForASecondMessage).executor(dispatcher).build();
+			a.send("first");
+			actors.add(a);
+		}
+		for (Actor a: actors) a.send("second");
+		
+		assertTrue("Every actor got its second message", done.await(10, TimeUnit.SECONDS));
+	}
+}